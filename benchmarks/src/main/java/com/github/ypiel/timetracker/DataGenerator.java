@@ -0,0 +1,65 @@
+package com.github.ypiel.timetracker;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Synthetic tickets for the benchmarks, the same ones for a given count and seed.
+// A ticket is worked on a few days to a few weeks somewhere in the last YEARS years, between a quarter of
+// an hour and four hours a day, part of it on one of its todos. The old ones are mostly Done.
+final class DataGenerator {
+
+    static final int YEARS = 5;
+
+    private static final String[] WORDS = {"fix", "login", "page", "report", "export", "crash", "slow", "query",
+            "customer", "upgrade", "review", "meeting", "deploy", "build", "test", "cache", "index", "timeout",
+            "migration", "dashboard", "invoice", "search", "api", "mobile", "release", "config", "audit", "backup"};
+    private static final String[] PROJECTS = {"ABC", "CORE", "OPS", "WEB", "DATA"};
+
+    private DataGenerator() {
+    }
+
+    static List<Ticket> tickets(int count, long seed) {
+        Random random = new Random(seed);
+        int today = (int) LocalDate.now().toEpochDay();
+        int firstDay = today - YEARS * 365;
+        List<Ticket> tickets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int start = firstDay + random.nextInt(today - firstDay);
+            int days = 1 + random.nextInt(random.nextInt(10) == 0 ? 60 : 15);
+            boolean old = start + days < today - 30;
+            Status status = old && random.nextInt(10) < 8 ? Status.Done : Status.values()[random.nextInt(Status.values().length)];
+            Ticket ticket = new Ticket(random.nextInt(10), PROJECTS[i % PROJECTS.length] + "-" + (i + 1), sentence(random, 3 + random.nextInt(6)), status);
+            int todos = random.nextInt(9);
+            for (int t = 0; t < todos; t++) {
+                ticket.getTodoItems().add(new TodoItem(sentence(random, 2 + random.nextInt(5)), t < todos / 2 ? Status.Done : Status.New));
+            }
+            for (int day = start; day < Math.min(start + days, today + 1); day++) {
+                if (random.nextInt(4) == 0) {
+                    // Not every day of the ticket
+                    continue;
+                }
+                long seconds = 900 + random.nextInt(4 * 3600 - 900);
+                ticket.incrementDuration(seconds);
+                ticket.incrementDurationForDay(day, seconds);
+                if (todos > 0) {
+                    TodoItem todo = ticket.getTodoItems().get(random.nextInt(todos));
+                    long part = seconds * (1 + random.nextInt(4)) / 4;
+                    todo.incrementDuration(part);
+                    todo.incrementDurationForDay(day, part);
+                }
+            }
+            tickets.add(ticket);
+        }
+        return tickets;
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
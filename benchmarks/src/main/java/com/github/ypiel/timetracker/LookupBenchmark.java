@@ -0,0 +1,75 @@
+package com.github.ypiel.timetracker;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Ticket lookups by id and by instance, and the HH:MM:SS formatting of the duration cells
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dtime-tracker.log.level=WARN"})
+public class LookupBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    int tickets;
+
+    private final TicketIndex index = new TicketIndex();
+    private final String[] ids = new String[KEYS];
+    private final Ticket[] instances = new Ticket[KEYS];
+    private final long[] durations = new long[KEYS];
+    private final char[] buffer = new char[24];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Ticket> data = DataGenerator.tickets(tickets, 42);
+        index.reset(data);
+        Random random = new Random(3);
+        for (int i = 0; i < KEYS; i++) {
+            Ticket ticket = data.get(random.nextInt(data.size()));
+            // A new String, as typed in the table or read from a request
+            ids[i] = new String(ticket.getId());
+            instances[i] = ticket;
+            durations[i] = ticket.getDuration();
+        }
+    }
+
+    @Benchmark
+    public Ticket byId() {
+        return index.get(ids[next++ & (KEYS - 1)]);
+    }
+
+    @Benchmark
+    public int rowOf() {
+        return index.rowOf(instances[next++ & (KEYS - 1)]);
+    }
+
+    @Benchmark
+    public String formatDuration() {
+        return DurationFormat.format(durations[next++ & (KEYS - 1)]);
+    }
+
+    // What the renderer does every second, without the String
+    @Benchmark
+    public int formatDurationInBuffer() {
+        return DurationFormat.format(durations[next++ & (KEYS - 1)], buffer);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.ypiel.timetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Saving and loading the tickets with the snapshot codecs, in memory. ShardedStoreBenchmark has the sharded storage.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dtime-tracker.log.level=WARN"})
+public class PersistenceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int tickets;
+
+    @Param({TicketJson.NAME, JsonCodec.NAME, BinaryCodec.NAME})
+    String codec;
+
+    private List<Ticket> data;
+    private StorageCodec storageCodec;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = DataGenerator.tickets(tickets, 42);
+        storageCodec = codec(codec);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storageCodec.write(data, out);
+        encoded = out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length);
+        storageCodec.write(data, out);
+        return out.toByteArray();
+    }
+
+    // What the startup does: the lazy codecs leave the days and the todos unparsed
+    @Benchmark
+    public List<Ticket> decode() throws IOException {
+        return storageCodec.read(encoded);
+    }
+
+    // Decoding and reading every day, as a report over the whole history does
+    @Benchmark
+    public long decodeAll() throws IOException {
+        long total = 0;
+        for (Ticket ticket : storageCodec.read(encoded)) {
+            total += ticket.getDurationsPerDay().total();
+            for (TodoItem todo : ticket.getTodoItems()) {
+                total += todo.getDurationsPerDay().total();
+            }
+        }
+        return total;
+    }
+
+    private static StorageCodec codec(String name) {
+        for (StorageCodec storageCodec : StorageCodec.CODECS) {
+            if (storageCodec.name().equals(name)) {
+                return storageCodec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown codec " + name);
+    }
+}
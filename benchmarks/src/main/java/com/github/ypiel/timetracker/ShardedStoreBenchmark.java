@@ -0,0 +1,106 @@
+package com.github.ypiel.timetracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// The sharded storage on disk: a full write, the compaction after some tracking (only the current month
+// changed), the startup read of the catalog and the read of the whole history.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Dtime-tracker.log.level=WARN"})
+public class ShardedStoreBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int tickets;
+
+    private List<Ticket> data;
+    private Path dir;
+    private ShardedStore store;
+    private List<Ticket> snapshot;
+    private final Random random = new Random(7);
+    private int today;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = DataGenerator.tickets(tickets, 42);
+        today = (int) LocalDate.now().toEpochDay();
+    }
+
+    // Everything written once, the compactions then only write what changed
+    @Setup(Level.Iteration)
+    public void setUpStore() throws IOException {
+        dir = Files.createTempDirectory("time-tracker-bench");
+        store = new ShardedStore(dir);
+        snapshot = new ArrayList<>(data.size());
+        for (Ticket ticket : data) {
+            snapshot.add(ticket.copy());
+        }
+        store.write(snapshot);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownStore() throws IOException {
+        ShardedStore.deleteTree(dir);
+    }
+
+    // A minute on one ticket, then the snapshot with its new copy is written
+    @Benchmark
+    public long compaction() throws IOException {
+        int i = random.nextInt(snapshot.size());
+        Ticket ticket = snapshot.get(i).copy();
+        ticket.incrementDuration(60);
+        ticket.incrementDurationForDay(today, 60);
+        snapshot.set(i, ticket);
+        return store.write(snapshot);
+    }
+
+    @Benchmark
+    public long fullWrite() throws IOException {
+        Path target = Files.createTempDirectory(dir, "full");
+        try {
+            return new ShardedStore(target).write(snapshot);
+        } finally {
+            ShardedStore.deleteTree(target);
+        }
+    }
+
+    // What the startup does: only the catalog is read
+    @Benchmark
+    public List<Ticket> load() throws IOException {
+        return new ShardedStore(dir).read();
+    }
+
+    @Benchmark
+    public void loadAll(Blackhole blackhole) throws IOException {
+        for (Ticket ticket : new ShardedStore(dir).read()) {
+            blackhole.consume(ticket.getDurationsPerDay());
+            for (TodoItem todo : ticket.getTodoItems()) {
+                blackhole.consume(todo.getDurationsPerDay());
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.ypiel.timetracker;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// The ticket table: the rebuild done when the tickets are reloaded, and the cells a screen of rows paints
+// afterwards. No JTable, the model is what the application code does.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Dtime-tracker.log.level=WARN"})
+public class TableBenchmark {
+
+    private static final int VISIBLE_ROWS = 40;
+
+    @Param({"1000", "10000", "100000"})
+    int tickets;
+
+    private List<Ticket> data;
+    private TicketTableModel model;
+    private final char[] buffer = new char[24];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = DataGenerator.tickets(tickets, 42);
+        model = new TicketTableModel((t, column, value) -> false);
+    }
+
+    @Benchmark
+    public void rebuild(Blackhole blackhole) {
+        model.setTickets(data);
+        paint(blackhole);
+    }
+
+    // One ticket credited: its row found and its duration cell painted again
+    @Benchmark
+    public void durationChanged(Blackhole blackhole) {
+        Ticket ticket = data.get(data.size() / 2);
+        model.durationChanged(ticket);
+        int row = model.rowOf(ticket);
+        Object value = model.getValueAt(row, TicketTableModel.TICKET_TABLE_COLUMN_DURATION);
+        blackhole.consume(DurationFormat.format((Long) value, buffer));
+    }
+
+    private void paint(Blackhole blackhole) {
+        for (int row = 0; row < Math.min(VISIBLE_ROWS, model.getRowCount()); row++) {
+            for (int column = 0; column < model.getColumnCount(); column++) {
+                Object value = model.getValueAt(row, column);
+                if (column == TicketTableModel.TICKET_TABLE_COLUMN_DURATION && value instanceof Long seconds) {
+                    blackhole.consume(DurationFormat.format(seconds, buffer));
+                } else {
+                    blackhole.consume(value);
+                }
+            }
+        }
+    }
+}
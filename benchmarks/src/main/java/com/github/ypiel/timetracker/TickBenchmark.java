@@ -0,0 +1,89 @@
+package com.github.ypiel.timetracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The per-second tick: one second of the tracked ticket and todo split by day, credited like
+// TrackingService.credit does (durations, journal records) and the duration cell of the table refreshed.
+// The journal is drained every 60 ticks, as the service saves every minute.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dtime-tracker.log.level=WARN"})
+public class TickBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int tickets;
+
+    private final TicketIndex index = new TicketIndex();
+    private final DayClock dayClock = new DayClock();
+    private final Tracker.Listener listener = this::credit;
+    private Path dir;
+    private Journal journal;
+    private TicketTableModel model;
+    private Ticket ticket;
+    private TodoItem todo;
+    private long now;
+    private int ticks;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<Ticket> data = DataGenerator.tickets(tickets, 42);
+        index.reset(data);
+        model = new TicketTableModel((t, column, value) -> false);
+        model.setTickets(data);
+        dir = Files.createTempDirectory("time-tracker-bench");
+        journal = new Journal(dir.resolve("time-tracker.journal"));
+        ticket = data.get(data.size() / 2);
+        todo = ticket.getTodoItems().isEmpty() ? null : ticket.getTodoItems().get(0);
+        now = System.currentTimeMillis();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ShardedStore.deleteTree(dir);
+    }
+
+    @Benchmark
+    public void tick() {
+        Tracker.credit(dayClock, now, 1, ticket, todo, listener);
+        now += 1000;
+        if (++ticks % 60 == 0) {
+            journal.drain();
+        }
+    }
+
+    private void credit(Ticket ticket, TodoItem todo, int day, long seconds) {
+        if (index.rowOf(ticket) < 0) {
+            return;
+        }
+        ticket.incrementDuration(seconds);
+        ticket.incrementDurationForDay(day, seconds);
+        journal.duration(ticket, null, day, seconds);
+        if (todo != null) {
+            todo.incrementDuration(seconds);
+            todo.incrementDurationForDay(day, seconds);
+            journal.duration(ticket, todo, day, seconds);
+        }
+        model.durationChanged(ticket);
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.ypiel.timetracker;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Search in the archived tickets and reopen one of them
+@Slf4j
+class ArchiveDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    private final transient ColdArchive archive;
+    private final transient Predicate<String> isActive;
+    private final JTextField search = new JTextField(30);
+    private final DefaultTableModel model = new DefaultTableModel(new String[]{"Year", "ID", "Description"}, 0) {
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+
+    ArchiveDialog(JFrame owner, ColdArchive archive, Predicate<String> isActive, Consumer<String> reopen) {
+        super(owner, "Archived tickets", true);
+        this.archive = archive;
+        this.isActive = isActive;
+        setLayout(new BorderLayout());
+
+        JTable table = new JTable(model);
+        JButton reopenButton = new JButton("Reopen");
+        reopenButton.addActionListener(e -> {
+            int row = table.getSelectedRow();
+            if (row >= 0) {
+                reopen.accept((String) model.getValueAt(row, 1));
+                refresh();
+            }
+        });
+
+        search.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                refresh();
+            }
+        });
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("Search"));
+        top.add(search);
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        bottom.add(reopenButton);
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+        setSize(700, 400);
+        setLocationRelativeTo(owner);
+        refresh();
+    }
+
+    private void refresh() {
+        model.setRowCount(0);
+        try {
+            for (ColdArchive.Entry entry : archive.search(search.getText())) {
+                if (!isActive.test(entry.id())) {
+                    model.addRow(new Object[]{entry.year(), entry.id(), entry.description()});
+                }
+            }
+        } catch (IOException e) {
+            log.error("Can't read the archive.", e);
+            JOptionPane.showMessageDialog(this, "Can't read the archive: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.github.ypiel.timetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Backups of the snapshot, one per date, in the backups directory.
+// A backup is either full (<date>.full.gz) or a delta against the latest full one (<date>.delta.<base date>.gz),
+// so the space and the I/O grow with what changed since the base, not with the whole history. A new full
+// backup is started after time-tracker.backup.full-days days or when the delta gets bigger than half of it.
+// Retention: every backup of the last time-tracker.backup.daily days, then the last one of each week for
+// time-tracker.backup.weekly weeks and the last one of each month for time-tracker.backup.monthly months.
+// A full backup is kept as long as a kept delta needs it.
+// With the sharded storage, a backup is a <date>.shards directory of hard links to the catalog and the month
+// shards, which are never modified once written: nothing is copied.
+@Slf4j
+class BackupStore {
+
+    private static final int FULL_DAYS = Integer.getInteger("time-tracker.backup.full-days", 30);
+    private static final int DAILY = Integer.getInteger("time-tracker.backup.daily", 14);
+    private static final int WEEKLY = Integer.getInteger("time-tracker.backup.weekly", 8);
+    private static final int MONTHLY = Integer.getInteger("time-tracker.backup.monthly", 24);
+
+    private static final Pattern NAME = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})\\.(?:(full|delta\\.(\\d{4}-\\d{2}-\\d{2}))\\.gz|shards)");
+    // Copies written before the backups, one per day of the year, never removed
+    private static final Pattern LEGACY = Pattern.compile("time-tracker-(\\d{1,3})\\.json");
+
+    // base is null for a full backup and for the shards
+    record Backup(LocalDate date, LocalDate base, Path path) {
+        boolean isFull() {
+            return base == null && !isShards();
+        }
+
+        boolean isLegacy() {
+            return path.getFileName().toString().endsWith(".json");
+        }
+
+        boolean isShards() {
+            return path.getFileName().toString().endsWith(".shards");
+        }
+    }
+
+    private final Path dir;
+
+    // Latest full backup, kept decompressed and indexed to not read it back at each backup
+    private LocalDate baseDate;
+    private long baseSize;
+    private BinaryDelta baseDelta;
+
+    BackupStore(Path dir) {
+        this.dir = dir;
+    }
+
+    // Called by the persistence thread after each snapshot, the latest one of a day replaces the previous one
+    void backup(byte[] snapshot, LocalDate date) throws IOException {
+        Files.createDirectories(dir);
+        NavigableMap<LocalDate, Backup> backups = list();
+        if (baseDate == null) {
+            loadBase(backups, date);
+        }
+        if (baseDelta != null && date.isAfter(baseDate) && date.isBefore(baseDate.plusDays(FULL_DAYS))) {
+            byte[] delta = gzip(baseDelta.diff(snapshot));
+            if (delta.length <= baseSize / 2) {
+                Path path = dir.resolve(date + ".delta." + baseDate + ".gz");
+                PersistenceWorker.writeAtomically(path, delta);
+                deleteOthers(backups.get(date), path);
+                prune(date);
+                return;
+            }
+        }
+        byte[] full = gzip(snapshot);
+        Path path = dir.resolve(date + ".full.gz");
+        PersistenceWorker.writeAtomically(path, full);
+        deleteOthers(backups.get(date), path);
+        baseDate = date;
+        baseSize = full.length;
+        baseDelta = new BinaryDelta(snapshot);
+        prune(date);
+    }
+
+    // Called by the persistence thread after each compaction of the sharded storage
+    void backup(ShardedStore store, LocalDate date) throws IOException {
+        Files.createDirectories(dir);
+        NavigableMap<LocalDate, Backup> backups = list();
+        Path path = dir.resolve(date + ".shards");
+        store.link(path);
+        deleteOthers(backups.get(date), path);
+        prune(date);
+    }
+
+    private void loadBase(NavigableMap<LocalDate, Backup> backups, LocalDate date) {
+        for (Backup backup : backups.headMap(date, true).descendingMap().values()) {
+            if (backup.isFull()) {
+                try {
+                    baseDelta = new BinaryDelta(gunzip(backup.path()));
+                    baseDate = backup.date();
+                    baseSize = Files.size(backup.path());
+                } catch (IOException e) {
+                    log.warn("Can't read the backup {}, a new full backup is written.", backup.path(), e);
+                }
+                return;
+            }
+        }
+    }
+
+    private static void deleteOthers(Backup previous, Path kept) throws IOException {
+        if (previous != null && !previous.path().equals(kept)) {
+            delete(previous);
+        }
+    }
+
+    private static void delete(Backup backup) throws IOException {
+        if (backup.isShards()) {
+            ShardedStore.deleteTree(backup.path());
+        } else {
+            Files.deleteIfExists(backup.path());
+        }
+    }
+
+    List<LocalDate> dates() throws IOException {
+        return List.copyOf(list().keySet());
+    }
+
+    // By date
+    List<Backup> backups() throws IOException {
+        return List.copyOf(list().values());
+    }
+
+    // Content of a full backup
+    static byte[] content(Backup full) throws IOException {
+        return full.isLegacy() ? Files.readAllBytes(full.path()) : gunzip(full.path());
+    }
+
+    // Tickets of a backup, left unparsed like at startup. base is the content of the full backup of a delta.
+    static List<Ticket> read(Backup backup, byte[] base) throws IOException {
+        if (backup.isShards()) {
+            return new ShardedStore(backup.path()).read();
+        }
+        byte[] content = backup.isFull() ? content(backup) : BinaryDelta.patch(base, gunzip(backup.path()));
+        return StorageCodec.detect(content).read(content);
+    }
+
+    // Content of the snapshot backed up for this date
+    byte[] restore(LocalDate date) throws IOException {
+        NavigableMap<LocalDate, Backup> backups = list();
+        Backup backup = backups.get(date);
+        if (backup == null) {
+            throw new NoSuchFileException(dir.resolve(date + ".full.gz").toString(), null, "No backup for " + date);
+        }
+        if (backup.isShards()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            StorageCodec.configured().write(new ShardedStore(backup.path()).read(), out);
+            return out.toByteArray();
+        }
+        if (backup.isFull()) {
+            return gunzip(backup.path());
+        }
+        Backup base = backups.get(backup.base());
+        if (base == null || !base.isFull()) {
+            throw new NoSuchFileException(dir.resolve(backup.base() + ".full.gz").toString(), null,
+                    "Missing base of the backup of " + date);
+        }
+        return BinaryDelta.patch(gunzip(base.path()), gunzip(backup.path()));
+    }
+
+    // The time-tracker-<day of year>.json copies of dir, by date, as full backups.
+    // The day of the year doesn't give the year: a copy is dated by the last day with this number on or before
+    // its modification time, which is the day it was written unless the file was touched since.
+    static List<Backup> legacy(Path dir) throws IOException {
+        NavigableMap<LocalDate, Backup> backups = new TreeMap<>();
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Matcher matcher = LEGACY.matcher(path.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                int dayOfYear = Integer.parseInt(matcher.group(1));
+                LocalDate modified = LocalDate.ofInstant(Files.getLastModifiedTime(path).toInstant(), ZoneId.systemDefault());
+                LocalDate date = null;
+                for (int year = modified.getYear(); date == null && year > modified.getYear() - 8; year--) {
+                    if (dayOfYear >= 1 && dayOfYear <= Year.of(year).length()) {
+                        LocalDate candidate = Year.of(year).atDay(dayOfYear);
+                        date = candidate.isAfter(modified) ? null : candidate;
+                    }
+                }
+                if (date == null) {
+                    log.warn("Ignore the backup {}.", path);
+                    continue;
+                }
+                backups.put(date, new Backup(date, null, path));
+            }
+        }
+        return List.copyOf(backups.values());
+    }
+
+    private NavigableMap<LocalDate, Backup> list() throws IOException {
+        NavigableMap<LocalDate, Backup> backups = new TreeMap<>();
+        if (!Files.isDirectory(dir)) {
+            return backups;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Matcher matcher = NAME.matcher(path.getFileName().toString());
+                if (!matcher.matches()) {
+                    continue;
+                }
+                try {
+                    LocalDate date = LocalDate.parse(matcher.group(1));
+                    LocalDate base = matcher.group(3) == null ? null : LocalDate.parse(matcher.group(3));
+                    Backup backup = new Backup(date, base, path);
+                    // A full backup and a delta for the same day only if a write was interrupted, the full one wins
+                    backups.merge(date, backup, (a, b) -> a.base() == null ? a : b);
+                } catch (DateTimeParseException e) {
+                    log.warn("Ignore the backup {}.", path);
+                }
+            }
+        }
+        return backups;
+    }
+
+    private void prune(LocalDate today) throws IOException {
+        NavigableMap<LocalDate, Backup> backups = list();
+        Set<LocalDate> kept = new HashSet<>();
+        Set<LocalDate> weeks = new HashSet<>();
+        Set<YearMonth> months = new HashSet<>();
+        LocalDate dailyLimit = today.minusDays(DAILY);
+        LocalDate weeklyLimit = today.minusWeeks(WEEKLY);
+        LocalDate monthlyLimit = today.minusMonths(MONTHLY);
+        for (LocalDate date : backups.descendingKeySet()) {
+            boolean keep = kept.isEmpty() || date.isAfter(dailyLimit);
+            if (date.isAfter(weeklyLimit) && weeks.add(date.with(DayOfWeek.MONDAY))) {
+                keep = true;
+            }
+            if (date.isAfter(monthlyLimit) && months.add(YearMonth.from(date))) {
+                keep = true;
+            }
+            if (keep) {
+                kept.add(date);
+            }
+        }
+        for (LocalDate date : List.copyOf(kept)) {
+            LocalDate base = backups.get(date).base();
+            if (base != null) {
+                kept.add(base);
+            }
+        }
+        for (Backup backup : backups.values()) {
+            if (!kept.contains(backup.date())) {
+                log.info("Remove the backup {}.", backup.path());
+                delete(backup);
+                if (backup.date().equals(baseDate)) {
+                    baseDate = null;
+                    baseDelta = null;
+                }
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(Path path) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(path), 64 * 1024)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.github.ypiel.timetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact binary snapshot:
+//   "TTB" version
+//   string table: count, then each string as length + UTF-8 bytes
+//   tickets: count, then order, id, description, status, duration, days, todos
+//   todo: description, status, duration, days
+//   days: count, then the difference with the previous epoch day and the seconds of the day
+// Numbers are varints (zigzag for order and day differences), strings are references in the table (0 is null)
+// and status is its ordinal + 1 (0 is null). A day costs 2 to 4 bytes instead of ~20 in JSON.
+class BinaryCodec implements StorageCodec {
+
+    static final String NAME = "binary";
+
+    private static final byte[] MAGIC = {'T', 'T', 'B'};
+    private static final int VERSION = 1;
+    private static final Status[] STATUSES = Status.values();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean accepts(byte[] content) {
+        return content.length > MAGIC.length && content[0] == MAGIC[0] && content[1] == MAGIC[1] && content[2] == MAGIC[2];
+    }
+
+    @Override
+    public List<Ticket> read(byte[] content) throws IOException {
+        if (!accepts(content)) {
+            throw new IOException("Not a binary time-tracker file.");
+        }
+        Input in = new Input(content, MAGIC.length);
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary time-tracker version " + version + ".");
+        }
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readString();
+        }
+        int count = in.readInt();
+        List<Ticket> tickets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setOrder(in.readZigZag());
+            ticket.setId(in.readRef(strings));
+            ticket.setDescription(in.readRef(strings));
+            ticket.setStatus(in.readStatus());
+            ticket.setDuration(in.readLong());
+            readDays(in, ticket.getDurationsPerDay());
+            int todos = in.readInt();
+            List<TodoItem> todoItems = ticket.getTodoItems();
+            for (int j = 0; j < todos; j++) {
+                TodoItem todo = new TodoItem();
+                todo.setDescription(in.readRef(strings));
+                todo.setStatus(in.readStatus());
+                todo.setDuration(in.readLong());
+                readDays(in, todo.getDurationsPerDay());
+                todoItems.add(todo);
+            }
+            tickets.add(ticket);
+        }
+        return tickets;
+    }
+
+    private static void readDays(Input in, DailyDurations durations) throws IOException {
+        int count = in.readInt();
+        int day = 0;
+        for (int i = 0; i < count; i++) {
+            day += in.readZigZag();
+            durations.add(day, in.readLong());
+        }
+    }
+
+    @Override
+    public void write(List<Ticket> tickets, OutputStream out) throws IOException {
+        // The body is written first to know the strings to put in the table
+        Output body = new Output();
+        body.writeInt(tickets.size());
+        for (Ticket ticket : tickets) {
+            body.writeZigZag(ticket.getOrder());
+            body.writeRef(ticket.getId());
+            body.writeRef(ticket.getDescription());
+            body.writeStatus(ticket.getStatus());
+            body.writeLong(ticket.getDuration());
+            writeDays(body, ticket.getDurationsPerDay());
+            body.writeInt(ticket.getTodoItems().size());
+            for (TodoItem todo : ticket.getTodoItems()) {
+                body.writeRef(todo.getDescription());
+                body.writeStatus(todo.getStatus());
+                body.writeLong(todo.getDuration());
+                writeDays(body, todo.getDurationsPerDay());
+            }
+        }
+
+        Output header = new Output();
+        header.write(MAGIC, 0, MAGIC.length);
+        header.writeInt(VERSION);
+        header.writeInt(body.strings.size());
+        for (String string : body.strings) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            header.writeInt(bytes.length);
+            header.write(bytes, 0, bytes.length);
+        }
+        header.writeTo(out);
+        body.writeTo(out);
+    }
+
+    private static void writeDays(Output out, DailyDurations durations) {
+        out.writeInt(durations.size());
+        int previous = 0;
+        for (int i = 0; i < durations.size(); i++) {
+            int day = durations.dayAt(i);
+            out.writeZigZag(day - previous);
+            out.writeLong(durations.secondsAt(i));
+            previous = day;
+        }
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+        private final Map<String, Integer> refs = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        Output() {
+            super(64 * 1024);
+        }
+
+        void writeLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeInt(int value) {
+            writeLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeZigZag(int value) {
+            writeInt((value << 1) ^ (value >> 31));
+        }
+
+        void writeRef(String string) {
+            if (string == null) {
+                writeInt(0);
+                return;
+            }
+            Integer ref = refs.get(string);
+            if (ref == null) {
+                strings.add(string);
+                ref = strings.size();
+                refs.put(string, ref);
+            }
+            writeInt(ref);
+        }
+
+        void writeStatus(Status status) {
+            write(status == null ? 0 : status.ordinal() + 1);
+        }
+    }
+
+    private static class Input {
+        private final byte[] content;
+        private int pos;
+
+        Input(byte[] content, int pos) {
+            this.content = content;
+            this.pos = pos;
+        }
+
+        private int readByte() throws IOException {
+            if (pos >= content.length) {
+                throw new IOException("Truncated binary time-tracker file.");
+            }
+            return content[pos++];
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in binary time-tracker file.");
+        }
+
+        int readInt() throws IOException {
+            return (int) readLong();
+        }
+
+        int readZigZag() throws IOException {
+            int value = readInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0 || length > content.length - pos) {
+                throw new IOException("Truncated binary time-tracker file.");
+            }
+            String string = new String(content, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return string;
+        }
+
+        String readRef(String[] strings) throws IOException {
+            int ref = readInt();
+            if (ref < 0 || ref > strings.length) {
+                throw new IOException("Bad string reference in binary time-tracker file.");
+            }
+            return ref == 0 ? null : strings[ref - 1];
+        }
+
+        Status readStatus() throws IOException {
+            int status = readByte();
+            if (status < 0 || status > STATUSES.length) {
+                throw new IOException("Bad status in binary time-tracker file.");
+            }
+            return status == 0 ? null : STATUSES[status - 1];
+        }
+    }
+}
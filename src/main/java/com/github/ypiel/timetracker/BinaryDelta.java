@@ -0,0 +1,168 @@
+package com.github.ypiel.timetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// rsync like delta of a snapshot against a base snapshot, independent of the storage codec.
+// The base is cut in blocks indexed by a rolling checksum; the target is scanned byte by byte and every
+// block found in the base becomes a copy (extended as far as the bytes match), the rest is literal.
+// Delta: "TTD" target length, CRC32 of the target, then ops: (length << 1 | 1) base offset for a copy,
+// (length << 1) bytes for a literal. All numbers are varints.
+class BinaryDelta {
+
+    private static final int BLOCK = 256;
+    private static final byte[] MAGIC = {'T', 'T', 'D'};
+
+    private final byte[] base;
+    // Rolling checksum -> first block with it
+    private final Map<Integer, Integer> blocks = new HashMap<>();
+
+    BinaryDelta(byte[] base) {
+        this.base = base;
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(checksum(base, i), i / BLOCK);
+        }
+    }
+
+    byte[] diff(byte[] target) {
+        Output out = new Output(target.length / 16 + 64);
+        out.write(MAGIC, 0, MAGIC.length);
+        out.writeLong(target.length);
+        out.writeLong(crc(target));
+        int pos = 0;
+        int literal = 0;
+        int a = 0;
+        int b = 0;
+        boolean rolling = false;
+        while (pos + BLOCK <= target.length) {
+            if (!rolling) {
+                int sum = checksum(target, pos);
+                a = sum & 0xFFFF;
+                b = sum >>> 16;
+                rolling = true;
+            }
+            Integer block = blocks.get((b << 16) | a);
+            int offset = block == null ? -1 : block * BLOCK;
+            if (offset >= 0 && Arrays.equals(base, offset, offset + BLOCK, target, pos, pos + BLOCK)) {
+                int end = pos + BLOCK;
+                int baseEnd = offset + BLOCK;
+                while (end < target.length && baseEnd < base.length && target[end] == base[baseEnd]) {
+                    end++;
+                    baseEnd++;
+                }
+                out.literal(target, literal, pos);
+                out.writeLong((long) (end - pos) << 1 | 1);
+                out.writeLong(offset);
+                pos = end;
+                literal = end;
+                rolling = false;
+            } else {
+                if (pos + BLOCK < target.length) {
+                    int removed = target[pos] & 0xFF;
+                    a = (a - removed + (target[pos + BLOCK] & 0xFF)) & 0xFFFF;
+                    b = (b - BLOCK * removed + a) & 0xFFFF;
+                }
+                pos++;
+            }
+        }
+        out.literal(target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    static byte[] patch(byte[] base, byte[] delta) throws IOException {
+        if (delta.length < MAGIC.length || delta[0] != MAGIC[0] || delta[1] != MAGIC[1] || delta[2] != MAGIC[2]) {
+            throw new IOException("Not a time-tracker delta.");
+        }
+        int[] pos = {MAGIC.length};
+        long length = readLong(delta, pos);
+        long crc = readLong(delta, pos);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Bad time-tracker delta length " + length + ".");
+        }
+        byte[] target = new byte[(int) length];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            long op = readLong(delta, pos);
+            int count = (int) (op >>> 1);
+            if (count < 0 || count > target.length - written) {
+                throw new IOException("Corrupted time-tracker delta.");
+            }
+            if ((op & 1) == 1) {
+                long offset = readLong(delta, pos);
+                if (offset < 0 || offset + count > base.length) {
+                    throw new IOException("Time-tracker delta doesn't match its base.");
+                }
+                System.arraycopy(base, (int) offset, target, written, count);
+            } else {
+                if (count > delta.length - pos[0]) {
+                    throw new IOException("Truncated time-tracker delta.");
+                }
+                System.arraycopy(delta, pos[0], target, written, count);
+                pos[0] += count;
+            }
+            written += count;
+        }
+        if (written != target.length || crc(target) != crc) {
+            throw new IOException("Time-tracker delta doesn't match its base.");
+        }
+        return target;
+    }
+
+    // Adler like checksum of a block: the low 16 bits are the sum of the bytes, the high ones the weighted sum
+    private static int checksum(byte[] data, int from) {
+        int a = 0;
+        int b = 0;
+        for (int i = from; i < from + BLOCK; i++) {
+            a += data[i] & 0xFF;
+            b += a;
+        }
+        return ((b & 0xFFFF) << 16) | (a & 0xFFFF);
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static long readLong(byte[] data, int[] pos) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IOException("Truncated time-tracker delta.");
+            }
+            int b = data[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in time-tracker delta.");
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        void writeLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void literal(byte[] data, int from, int to) {
+            if (to > from) {
+                writeLong((long) (to - from) << 1);
+                write(data, from, to - from);
+            }
+        }
+    }
+}
@@ -0,0 +1,642 @@
+package com.github.ypiel.timetracker;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SortedMap;
+
+// Command line on the same data as the application, without Swing/AWT so that it starts fast:
+//   list [--all]                                   tickets as CSV, Done ones only with --all
+//   start <ticket> [<todo>]                        track a ticket, or one of its todos by index
+//   stop                                           credit the time since start
+//   current                                        what is tracked
+//   add-todo <ticket> <description>
+//   set-status <ticket> [<todo>] <status>
+//   report [--from <day>] [--to <day>] [--group ticket|todo|status|day|week|month] [--format csv|json] [--archive]
+//   flow cycle|throughput [--from <day>] [--to <day>] [--format csv|json]    from the status transitions log
+//   flow status [<ticket>] [--format csv|json]                                 time spent in each status
+//   export [--format csv|jsonl|ics] [--from <day>] [--to <day>] [--archive] [<file>]   time entries, see TimeEntries
+//   import <file> [--format csv|jsonl|ics]         through the running application when its API answers
+//   restore <day>                                  the tickets of the backup of that day, the application stopped
+// Changes are appended to the journal under its lock, a running application picks them up at its next save.
+// What is tracked is kept in cli-tracking.json between two calls, on the wall clock since they are processes apart.
+class Cli {
+
+    record Tracking(String ticket, Integer todo, long start) {
+    }
+
+    private static final Path TRACKING = DataFiles.STATE.resolve("cli-tracking.json");
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Journal journal = new Journal(DataFiles.JOURNAL);
+    private final StatusLog statusLog = new StatusLog(DataFiles.STATE);
+    private final List<StatusLog.Change> statusChanges = new ArrayList<>();
+    private List<Ticket> tickets;
+    private TicketIndex index;
+
+    Cli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    // Exit code of the command
+    int run(String[] args) {
+        try {
+            // Takes the journal lock through a TrackingService
+            if (args[0].equals("import")) {
+                return importEntries(args);
+            }
+            if (args[0].equals("restore")) {
+                return restore(args);
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (IllegalStateException e) {
+            err.println("time-tracker: " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            err.println("time-tracker: " + e);
+            return 1;
+        }
+        try {
+            Closeable lock = journal.lock();
+            try {
+                tickets = DataFiles.load(journal, new ShardedStore(DataFiles.STATE));
+                index = new TicketIndex();
+                index.reset(tickets);
+                int code = switch (args[0]) {
+                    case "list" -> list(args);
+                    case "start" -> start(args);
+                    case "stop" -> stop();
+                    case "current" -> current();
+                    case "add-todo" -> addTodo(args);
+                    case "set-status" -> setStatus(args);
+                    case "report" -> report(args);
+                    case "history" -> history(args);
+                    case "flow" -> flow(args);
+                    case "export" -> export(args);
+                    default -> usage();
+                };
+                List<Journal.Record> records = journal.drain();
+                if (DataFiles.DEVICE != null) {
+                    new DeviceSync(DataFiles.DEVICES, DataFiles.DEVICE).publish(records);
+                }
+                journal.append(records);
+                statusLog.append(statusChanges);
+                return code;
+            } finally {
+                lock.close();
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (IOException e) {
+            err.println("time-tracker: " + e);
+            return 1;
+        }
+    }
+
+    private int usage() {
+        err.println("""
+                usage: time-tracker <command>
+                  list [--all]
+                  start <ticket> [<todo>]
+                  stop
+                  current
+                  add-todo <ticket> <description>
+                  set-status <ticket> [<todo>] <status>
+                  report [--from <yyyy-MM-dd>] [--to <yyyy-MM-dd>] [--group ticket|todo|status|day|week|month] [--format csv|json] [--archive]
+                  history [--from <yyyy-MM-dd>] [--to <yyyy-MM-dd>] [--format csv|json]   (changes between the backups)
+                  history --at <yyyy-MM-dd>   (the tickets of the backup of that day or the one before)
+                  flow cycle|throughput [--from <yyyy-MM-dd>] [--to <yyyy-MM-dd>] [--format csv|json]
+                  flow status [<ticket>] [--format csv|json]   (seconds spent in each status)
+                  export [--format csv|jsonl|ics] [--from <yyyy-MM-dd>] [--to <yyyy-MM-dd>] [--archive] [<file>]
+                  import <file> [--format csv|jsonl|ics]
+                  restore <yyyy-MM-dd>   (the tickets of the backup of that day, the application stopped)
+                  serve   (the tracking service and its HTTP API, without window)""");
+        return 2;
+    }
+
+    private int list(String[] args) {
+        print(tickets, args.length > 1 && args[1].equals("--all"));
+        return 0;
+    }
+
+    private void print(List<Ticket> tickets, boolean all) {
+        out.println("order,id,status,duration,description");
+        for (Ticket ticket : tickets) {
+            if (all || ticket.getStatus() != Status.Done) {
+                out.println(ticket.getOrder() + "," + ReportEngine.csv(ticket.getId()) + "," + ticket.getStatus() + ","
+                        + DurationFormat.format(ticket.getDuration()) + "," + ReportEngine.csv(ticket.getDescription()));
+            }
+        }
+    }
+
+    private int start(String[] args) throws IOException {
+        if (args.length < 2) {
+            return usage();
+        }
+        Ticket ticket = ticket(args[1]);
+        Integer todo = args.length > 2 ? todoIndex(ticket, args[2]) : null;
+        Tracking previous = tracking();
+        if (previous != null) {
+            credit(previous);
+        }
+        Tracking tracking = new Tracking(ticket.getId(), todo, System.currentTimeMillis());
+        PersistenceWorker.writeAtomically(TRACKING, TicketJson.MAPPER.writeValueAsBytes(tracking));
+        out.println("Tracking " + describe(tracking));
+        return 0;
+    }
+
+    private int stop() throws IOException {
+        Tracking tracking = tracking();
+        if (tracking == null) {
+            err.println("Nothing tracked.");
+            return 1;
+        }
+        credit(tracking);
+        Files.delete(TRACKING);
+        return 0;
+    }
+
+    private int current() throws IOException {
+        Tracking tracking = tracking();
+        if (tracking == null) {
+            out.println("Nothing tracked.");
+        } else {
+            long seconds = Math.max(0, System.currentTimeMillis() - tracking.start()) / 1000;
+            out.println(describe(tracking) + " " + DurationFormat.format(seconds));
+        }
+        return 0;
+    }
+
+    private int addTodo(String[] args) {
+        if (args.length < 3) {
+            return usage();
+        }
+        Ticket ticket = ticket(args[1]);
+        TodoItem todo = new TodoItem(String.join(" ", List.of(args).subList(2, args.length)), Status.New);
+        ticket.getTodoItems().add(todo);
+        journal.todoCreated(ticket, todo);
+        transition(ticket, todo, null, todo.getStatus());
+        out.println(ticket.getTodoItems().size() - 1);
+        return 0;
+    }
+
+    private int setStatus(String[] args) {
+        if (args.length < 3) {
+            return usage();
+        }
+        Ticket ticket = ticket(args[1]);
+        Status status = status(args[args.length - 1]);
+        if (args.length > 3) {
+            int todoIndex = todoIndex(ticket, args[2]);
+            TodoItem todo = ticket.getTodoItems().get(todoIndex);
+            if (status != todo.getStatus()) {
+                transition(ticket, todo, todo.getStatus(), status);
+            }
+            todo.setStatus(status);
+            journal.todoUpdated(ticket, todoIndex, todo, todo.getDescription());
+        } else {
+            if (status != ticket.getStatus()) {
+                transition(ticket, null, ticket.getStatus(), status);
+            }
+            ticket.setStatus(status);
+            journal.ticketUpdated(ticket.getId(), ticket);
+        }
+        return 0;
+    }
+
+    private int report(String[] args) throws IOException {
+        LocalDate today = LocalDate.now();
+        LocalDate from = today.with(DayOfWeek.MONDAY);
+        LocalDate to = today;
+        ReportEngine.GroupBy groupBy = ReportEngine.GroupBy.TICKET;
+        boolean json = false;
+        boolean withArchive = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from" -> from = day(value(args, ++i));
+                case "--to" -> to = day(value(args, ++i));
+                case "--group" -> groupBy = groupBy(value(args, ++i));
+                case "--format" -> json = switch (value(args, ++i)) {
+                    case "json" -> true;
+                    case "csv" -> false;
+                    default -> throw new IllegalArgumentException("Unknown format " + args[i] + ", csv or json expected.");
+                };
+                case "--archive" -> withArchive = true;
+                default -> throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+        List<Ticket> reported = withArchive ? withArchive() : tickets;
+        List<ReportEngine.Row> rows = new ReportEngine(reported).report(groupBy, from, to);
+        if (json) {
+            out.println(TicketJson.MAPPER.writeValueAsString(rows));
+        } else {
+            StringWriter csv = new StringWriter();
+            ReportEngine.writeCsv(rows, csv);
+            out.print(csv);
+        }
+        return 0;
+    }
+
+    // The tickets and the archived ones which weren't reopened
+    private List<Ticket> withArchive() throws IOException {
+        List<Ticket> all = new ArrayList<>(tickets);
+        ColdArchive archive = new ColdArchive(DataFiles.ARCHIVE);
+        for (int year : archive.years()) {
+            for (Ticket ticket : archive.read(year)) {
+                if (!index.contains(ticket.getId())) {
+                    all.add(ticket);
+                }
+            }
+        }
+        return all;
+    }
+
+    // One line per change, dated by the backup where it is first seen: created, deleted (or archived),
+    // status and time, the time being the seconds added to a day
+    private int history(String[] args) throws IOException {
+        LocalDate from = LocalDate.MIN;
+        LocalDate to = LocalDate.MAX;
+        LocalDate at = null;
+        boolean json = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from" -> from = day(value(args, ++i));
+                case "--to" -> to = day(value(args, ++i));
+                case "--at" -> at = day(value(args, ++i));
+                case "--format" -> json = switch (value(args, ++i)) {
+                    case "json" -> true;
+                    case "csv" -> false;
+                    default -> throw new IllegalArgumentException("Unknown format " + args[i] + ", csv or json expected.");
+                };
+                default -> throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+        HistoryAnalyzer analyzer = new HistoryAnalyzer(new BackupStore(DataFiles.STATE.resolve("backups")), DataFiles.DIR);
+        if (at != null) {
+            List<Ticket> state = analyzer.at(at);
+            if (state == null) {
+                err.println("No backup on or before " + at + ".");
+                return 1;
+            }
+            print(state, true);
+            return 0;
+        }
+        List<HistoryAnalyzer.Diff> diffs = analyzer.diffs(from, to);
+        if (json) {
+            out.println(TicketJson.MAPPER.writeValueAsString(diffs));
+            return 0;
+        }
+        out.println("date,change,ticket,detail,seconds");
+        for (HistoryAnalyzer.Diff diff : diffs) {
+            for (String id : diff.created()) {
+                out.println(diff.to() + ",created," + ReportEngine.csv(id) + ",,");
+            }
+            for (String id : diff.deleted()) {
+                out.println(diff.to() + ",deleted," + ReportEngine.csv(id) + ",,");
+            }
+            for (HistoryAnalyzer.StatusChange change : diff.statusChanges()) {
+                out.println(diff.to() + ",status," + ReportEngine.csv(change.ticket()) + "," + change.from() + " -> " + change.to() + ",");
+            }
+            diff.added().forEach((day, seconds) -> out.println(diff.to() + ",time,," + day + "," + seconds));
+        }
+        return 0;
+    }
+
+    // Cycle times of the tickets done, tickets done per week, or seconds in each status, see StatusFlow
+    private int flow(String[] args) throws IOException {
+        if (args.length < 2) {
+            return usage();
+        }
+        String query = args[1];
+        LocalDate from = LocalDate.MIN;
+        LocalDate to = LocalDate.MAX;
+        String ticket = null;
+        boolean json = false;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from" -> from = day(value(args, ++i));
+                case "--to" -> to = day(value(args, ++i));
+                case "--format" -> json = switch (value(args, ++i)) {
+                    case "json" -> true;
+                    case "csv" -> false;
+                    default -> throw new IllegalArgumentException("Unknown format " + args[i] + ", csv or json expected.");
+                };
+                default -> {
+                    if (!query.equals("status") || ticket != null || args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+                    }
+                    ticket = args[i];
+                }
+            }
+        }
+        StatusFlow flow = statusLog.flow();
+        switch (query) {
+            case "cycle" -> {
+                List<StatusFlow.CycleTime> cycleTimes = flow.cycleTimes(from, to);
+                if (json) {
+                    out.println(TicketJson.MAPPER.writeValueAsString(cycleTimes));
+                    return 0;
+                }
+                out.println("ticket,started,done,cycle_seconds,lead_seconds");
+                for (StatusFlow.CycleTime c : cycleTimes) {
+                    out.println(ReportEngine.csv(c.ticket()) + "," + c.started() + "," + c.done() + "," + c.cycleSeconds() + ","
+                            + (c.leadSeconds() == null ? "" : c.leadSeconds()));
+                }
+            }
+            case "throughput" -> {
+                SortedMap<String, Integer> throughput = flow.throughput(from, to);
+                if (json) {
+                    out.println(TicketJson.MAPPER.writeValueAsString(throughput));
+                    return 0;
+                }
+                out.println("week,done");
+                throughput.forEach((week, done) -> out.println(week + "," + done));
+            }
+            case "status" -> {
+                List<StatusFlow.TimeInStatus> times = ticket == null ? flow.timeInStatus() : flow.timeInStatus(ticket);
+                if (times == null) {
+                    err.println("No status change of " + ticket + " recorded.");
+                    return 1;
+                }
+                if (json) {
+                    out.println(TicketJson.MAPPER.writeValueAsString(times));
+                    return 0;
+                }
+                StringBuilder header = new StringBuilder("ticket,todo");
+                for (Status status : Status.values()) {
+                    header.append(',').append(status);
+                }
+                out.println(header);
+                for (StatusFlow.TimeInStatus time : times) {
+                    StringBuilder line = new StringBuilder(ReportEngine.csv(time.ticket())).append(',')
+                            .append(time.todo() == null ? "" : ReportEngine.csv(time.todo()));
+                    for (Status status : Status.values()) {
+                        line.append(',').append(time.seconds().get(status));
+                    }
+                    out.println(line);
+                }
+            }
+            default -> {
+                return usage();
+            }
+        }
+        return 0;
+    }
+
+    // To stdout without a file, the format from the file extension otherwise
+    private int export(String[] args) throws IOException {
+        LocalDate from = LocalDate.MIN;
+        LocalDate to = LocalDate.MAX;
+        TimeEntries.Format format = null;
+        boolean withArchive = false;
+        Path file = null;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from" -> from = day(value(args, ++i));
+                case "--to" -> to = day(value(args, ++i));
+                case "--format" -> format = TimeEntries.Format.of(value(args, ++i));
+                case "--archive" -> withArchive = true;
+                default -> {
+                    if (file != null || args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+                    }
+                    file = Path.of(args[i]);
+                }
+            }
+        }
+        if (format == null) {
+            format = file == null ? TimeEntries.Format.CSV : TimeEntries.Format.of(file);
+        }
+        List<Ticket> exported = withArchive ? withArchive() : tickets;
+        OutputStream stream = file == null ? new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) {
+                Cli.this.out.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                Cli.this.out.flush();
+            }
+        } : Files.newOutputStream(file);
+        long count;
+        try (TimeEntries.Writer writer = TimeEntries.writer(stream, format)) {
+            count = TimeEntries.export(exported, from, to, writer);
+        }
+        if (file != null) {
+            out.println(count + " time entries exported to " + file + ".");
+        }
+        return 0;
+    }
+
+    private int importEntries(String[] args) throws IOException {
+        Path file = null;
+        TimeEntries.Format format = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--format")) {
+                format = TimeEntries.Format.of(value(args, ++i));
+            } else if (file == null && !args[i].startsWith("--")) {
+                file = Path.of(args[i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+            }
+        }
+        if (file == null) {
+            return usage();
+        }
+        if (format == null) {
+            format = TimeEntries.Format.of(file);
+        }
+        // A running application would overwrite the import with its next compaction, it imports itself
+        Integer code = importThroughApi(file, format);
+        if (code != null) {
+            return code;
+        }
+        long size = Math.max(1, Files.size(file));
+        TrackingService service = new TrackingService();
+        service.start();
+        TrackingService.ImportResult result;
+        // Every 10%
+        long[] shown = {0};
+        try (TimeEntries.Reader reader = TimeEntries.reader(Files.newInputStream(file), format)) {
+            result = service.importEntries(reader, r -> {
+                long percent = Math.min(100, r.bytes() * 100 / size);
+                if (percent >= shown[0] + 10) {
+                    shown[0] = percent - percent % 10;
+                    err.println(r.entries() + " time entries, " + percent + "%");
+                }
+            });
+        } finally {
+            service.close();
+        }
+        out.println(result.entries() + " time entries imported (" + DurationFormat.format(result.seconds()) + "), "
+                + result.tickets() + " tickets and " + result.todos() + " todos created, " + result.skipped() + " skipped.");
+        return 0;
+    }
+
+    // Through a TrackingService: the restored tickets are saved like its own ones, the journal on top of them reset
+    private int restore(String[] args) throws IOException {
+        if (args.length != 2) {
+            return usage();
+        }
+        LocalDate date = day(args[1]);
+        TrackingService service = new TrackingService();
+        try {
+            service.start();
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException(e.getMessage() + " Stop it to restore a backup.");
+        }
+        try {
+            out.println(service.restore(date) + " tickets restored from the backup of " + date + ".");
+        } finally {
+            service.close();
+        }
+        return 0;
+    }
+
+    // null when no application answers on the API port
+    private Integer importThroughApi(Path file, TimeEntries.Format format) throws IOException {
+        if (HttpApi.PORT <= 0) {
+            return null;
+        }
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + HttpApi.PORT + "/api/import?format="
+                        + format.name().toLowerCase(Locale.ROOT)))
+                .header(HttpApi.HEADER, "cli")
+                .POST(HttpRequest.BodyPublishers.ofFile(file))
+                .build();
+        HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (ConnectException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing.", e);
+        }
+        if (response.statusCode() != 201) {
+            err.println("time-tracker: import refused by the application: " + response.body());
+            return 1;
+        }
+        out.println("Imported by the running application: " + response.body());
+        return 0;
+    }
+
+    private void transition(Ticket ticket, TodoItem todo, Status from, Status to) {
+        statusChanges.add(new StatusLog.Transition(System.currentTimeMillis(), ticket.getId(),
+                todo == null ? null : todo.getDescription(), from, to));
+    }
+
+    // Journal the time since the tracking started, split by day
+    private void credit(Tracking tracking) {
+        Ticket ticket = index.get(tracking.ticket());
+        if (ticket == null) {
+            err.println("Ticket " + tracking.ticket() + " doesn't exist anymore, its time is lost.");
+            return;
+        }
+        TodoItem todo = null;
+        if (tracking.todo() != null) {
+            List<TodoItem> todos = ticket.getTodoItems();
+            todo = tracking.todo() < todos.size() ? todos.get(tracking.todo()) : null;
+        }
+        long seconds = Math.max(0, System.currentTimeMillis() - tracking.start()) / 1000;
+        Tracker.credit(new DayClock(), tracking.start(), seconds, ticket, todo, (t, td, day, secs) -> {
+            t.incrementDuration(secs);
+            t.incrementDurationForDay(day, secs);
+            journal.duration(t, null, day, secs);
+            if (td != null) {
+                td.incrementDuration(secs);
+                td.incrementDurationForDay(day, secs);
+                journal.duration(t, td, day, secs);
+            }
+        });
+        out.println(describe(tracking) + " +" + DurationFormat.format(seconds));
+    }
+
+    private Tracking tracking() throws IOException {
+        if (!Files.exists(TRACKING)) {
+            return null;
+        }
+        return TicketJson.MAPPER.readValue(TRACKING.toFile(), Tracking.class);
+    }
+
+    private static String describe(Tracking tracking) {
+        return tracking.ticket() + (tracking.todo() == null ? "" : " todo " + tracking.todo());
+    }
+
+    private Ticket ticket(String id) {
+        Ticket ticket = index.get(id);
+        if (ticket == null) {
+            throw new IllegalArgumentException("Unknown ticket " + id + ".");
+        }
+        return ticket;
+    }
+
+    private static int todoIndex(Ticket ticket, String value) {
+        try {
+            int todo = Integer.parseInt(value);
+            if (todo >= 0 && todo < ticket.getTodoItems().size()) {
+                return todo;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Ticket " + ticket.getId() + " has no todo " + value + ".");
+    }
+
+    static Status status(String value) {
+        for (Status status : Status.values()) {
+            if (status.name().equalsIgnoreCase(value)) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown status " + value + ".");
+    }
+
+    static ReportEngine.GroupBy groupBy(String value) {
+        try {
+            return ReportEngine.GroupBy.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown group " + value + ".");
+        }
+    }
+
+    static LocalDate day(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Day " + value + " must be like 2024-10-17.");
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value after " + args[i - 1] + ".");
+        }
+        return args[i];
+    }
+}
@@ -0,0 +1,274 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Done tickets without any activity for time-tracker.archive.days days leave the tickets list for the archive
+// directory: one binary file per year of last activity (<year>.ttb) and index.json, id -> year and description,
+// to search them without reading the year files. A year file is only read to report on it or to reopen one
+// of its tickets, so the tickets list, the snapshot and the startup only depend on the active tickets.
+// When a ticket is both in the archive and in the tickets list (reopened), the tickets list wins.
+// archive() and forget() only change the archive in memory, the files are written by flush() on the persistence
+// thread: the service doesn't wait for the disk. Until then the readers see the staged tickets as if written.
+@Slf4j
+class ColdArchive {
+
+    static final int ARCHIVE_DAYS = Integer.getInteger("time-tracker.archive.days", 90);
+
+    private static final Pattern YEAR_FILE = Pattern.compile("(\\d{4})\\.ttb");
+    private static final TypeReference<List<Entry>> ENTRIES = new TypeReference<>() {
+    };
+
+    record Entry(String id, String description, int year) {
+    }
+
+    private final Path dir;
+    private final Path indexFile;
+    private final StorageCodec codec = new BinaryCodec();
+    // Loaded on first use. The methods are synchronized, the archive is shared by the service and its clients.
+    private Map<String, Entry> index;
+    // Archived tickets not written yet by ID, and the IDs to remove from the year files by year
+    private final Map<String, Ticket> staged = new LinkedHashMap<>();
+    private final Map<Integer, Set<String>> stale = new HashMap<>();
+
+    ColdArchive(Path dir) {
+        this.dir = dir;
+        this.indexFile = dir.resolve("index.json");
+    }
+
+    // Done tickets whose last tracked day is older than ARCHIVE_DAYS, the excluded one is kept
+    static List<Ticket> candidates(List<Ticket> tickets, LocalDate today, Ticket excluded) {
+        long limit = today.minusDays(ARCHIVE_DAYS).toEpochDay();
+        List<Ticket> candidates = new ArrayList<>();
+        for (Ticket ticket : tickets) {
+            if (ticket == excluded || ticket.getStatus() != Status.Done) {
+                continue;
+            }
+            int lastDay = ticket.lastDay();
+            if (lastDay != Integer.MIN_VALUE && lastDay < limit) {
+                candidates.add(ticket);
+            }
+        }
+        return candidates;
+    }
+
+    // The tickets are copies nobody modifies, with some time tracked. They are written by the next flush().
+    synchronized void archive(Collection<Ticket> tickets) throws IOException {
+        Map<String, Entry> index = index();
+        for (Ticket ticket : tickets) {
+            int year = LocalDate.ofEpochDay(ticket.lastDay()).getYear();
+            Entry previous = index.get(ticket.getId());
+            if (previous != null && previous.year() != year) {
+                stale.computeIfAbsent(previous.year(), y -> new HashSet<>()).add(ticket.getId());
+            }
+            staged.put(ticket.getId(), ticket);
+            index.put(ticket.getId(), new Entry(ticket.getId(), ticket.getDescription(), year));
+        }
+    }
+
+    // Write the year files then the index, a failed flush is done again by the next one
+    synchronized void flush() throws IOException {
+        if (staged.isEmpty() && stale.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<Ticket>> byYear = new HashMap<>();
+        for (Ticket ticket : staged.values()) {
+            byYear.computeIfAbsent(index.get(ticket.getId()).year(), y -> new ArrayList<>()).add(ticket);
+        }
+        Set<Integer> years = new TreeSet<>(byYear.keySet());
+        years.addAll(stale.keySet());
+        for (int year : years) {
+            Map<String, Ticket> archived = byId(readFile(year));
+            boolean changed = archived.keySet().removeAll(stale.getOrDefault(year, Set.of()));
+            for (Ticket ticket : byYear.getOrDefault(year, List.of())) {
+                archived.put(ticket.getId(), ticket);
+                changed = true;
+            }
+            if (changed) {
+                write(year, archived.values());
+            }
+        }
+        writeIndex();
+        if (!staged.isEmpty()) {
+            log.info("{} tickets archived in {}.", staged.size(), dir);
+        }
+        staged.clear();
+        stale.clear();
+    }
+
+    // Archived tickets whose id or description contains the text, ignoring case
+    synchronized List<Entry> search(String text) throws IOException {
+        String lower = text.toLowerCase(Locale.ROOT);
+        List<Entry> found = new ArrayList<>();
+        for (Entry entry : index().values()) {
+            if (entry.id().toLowerCase(Locale.ROOT).contains(lower)
+                    || (entry.description() != null && entry.description().toLowerCase(Locale.ROOT).contains(lower))) {
+                found.add(entry);
+            }
+        }
+        return found;
+    }
+
+    synchronized Set<Integer> years() throws IOException {
+        Set<Integer> years = new TreeSet<>();
+        for (Entry entry : index().values()) {
+            years.add(entry.year());
+        }
+        return years;
+    }
+
+    synchronized List<Ticket> read(int year) throws IOException {
+        if (staged.isEmpty() && stale.isEmpty()) {
+            return readFile(year);
+        }
+        Map<String, Ticket> archived = byId(readFile(year));
+        archived.keySet().removeAll(stale.getOrDefault(year, Set.of()));
+        for (Ticket ticket : staged.values()) {
+            if (index.get(ticket.getId()).year() == year) {
+                archived.put(ticket.getId(), ticket);
+            }
+        }
+        return new ArrayList<>(archived.values());
+    }
+
+    private List<Ticket> readFile(int year) throws IOException {
+        Path file = yearFile(year);
+        if (!Files.exists(file)) {
+            return new ArrayList<>();
+        }
+        return codec.read(Files.readAllBytes(file));
+    }
+
+    synchronized boolean contains(String id) throws IOException {
+        return index().containsKey(id);
+    }
+
+    // Copy of the archived ticket to put back in the tickets list, it is removed from the archive by forget()
+    // once the tickets list containing it has been saved
+    synchronized Ticket get(String id) throws IOException {
+        Entry entry = index().get(id);
+        if (entry == null) {
+            return null;
+        }
+        Ticket ticket = staged.get(id);
+        return ticket != null ? ticket.copy() : byId(readFile(entry.year())).get(id);
+    }
+
+    // Drop the archived copies of tickets which are in the tickets list, from the files at the next flush()
+    synchronized void forget(List<Ticket> tickets) throws IOException {
+        Map<String, Entry> index = index();
+        for (Ticket ticket : tickets) {
+            Entry entry = index.remove(ticket.getId());
+            if (entry != null) {
+                staged.remove(ticket.getId());
+                stale.computeIfAbsent(entry.year(), y -> new HashSet<>()).add(ticket.getId());
+            }
+        }
+    }
+
+    private void write(int year, Collection<Ticket> tickets) throws IOException {
+        Files.createDirectories(dir);
+        if (tickets.isEmpty()) {
+            Files.deleteIfExists(yearFile(year));
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.write(new ArrayList<>(tickets), out);
+        PersistenceWorker.writeAtomically(yearFile(year), out.toByteArray());
+    }
+
+    private Map<String, Entry> index() throws IOException {
+        if (index == null) {
+            index = new LinkedHashMap<>();
+            if (!Files.isDirectory(dir)) {
+                return index;
+            }
+            if (isIndexUpToDate()) {
+                for (Entry entry : TicketJson.MAPPER.readValue(indexFile.toFile(), ENTRIES)) {
+                    index.put(entry.id(), entry);
+                }
+            } else {
+                rebuildIndex();
+            }
+        }
+        return index;
+    }
+
+    // The year files are written before the index, a newer year file means the index write didn't happen
+    private boolean isIndexUpToDate() throws IOException {
+        if (!Files.exists(indexFile)) {
+            return false;
+        }
+        FileTime indexTime = Files.getLastModifiedTime(indexFile);
+        for (Path file : yearFiles().values()) {
+            if (Files.getLastModifiedTime(file).compareTo(indexTime) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebuildIndex() throws IOException {
+        log.info("Rebuild the archive index {}.", indexFile);
+        for (Map.Entry<Integer, Path> year : yearFiles().entrySet()) {
+            for (Ticket ticket : readFile(year.getKey())) {
+                index.put(ticket.getId(), new Entry(ticket.getId(), ticket.getDescription(), year.getKey()));
+            }
+        }
+        writeIndex();
+    }
+
+    private void writeIndex() throws IOException {
+        Files.createDirectories(dir);
+        PersistenceWorker.writeAtomically(indexFile, TicketJson.MAPPER.writeValueAsBytes(index.values()));
+    }
+
+    private Map<Integer, Path> yearFiles() throws IOException {
+        Map<Integer, Path> files = new HashMap<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) list::iterator) {
+                Matcher matcher = YEAR_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Integer.parseInt(matcher.group(1)), file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private Path yearFile(int year) {
+        return dir.resolve(year + ".ttb");
+    }
+
+    private static Map<String, Ticket> byId(List<Ticket> tickets) {
+        Map<String, Ticket> byId = new LinkedHashMap<>();
+        for (Ticket ticket : tickets) {
+            byId.put(ticket.getId(), ticket);
+        }
+        return byId;
+    }
+}
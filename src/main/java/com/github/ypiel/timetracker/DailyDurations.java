@@ -0,0 +1,217 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Seconds spent per day, replaces a Map<String, Long> keyed by ISO dates.
+// Days are epoch days kept sorted in primitive arrays with the running sums next to them, so adding to the
+// last day doesn't allocate and the total of any range of days is two binary searches away.
+// Still (de)serialized as {"2024-10-17": 3600, ...} to stay compatible with the existing files.
+@JsonSerialize(using = DailyDurations.Serializer.class)
+@JsonDeserialize(using = DailyDurations.Deserializer.class)
+class DailyDurations {
+
+    private int[] days;
+    private long[] seconds;
+    // prefix[i] = seconds[0] + ... + seconds[i]
+    private long[] prefix;
+    private int size;
+
+    public DailyDurations() {
+        this(4);
+    }
+
+    private DailyDurations(int capacity) {
+        days = new int[capacity];
+        seconds = new long[capacity];
+        prefix = new long[capacity];
+    }
+
+    public void add(int day, long elapsedSeconds) {
+        // Nearly always today, the last entry
+        if (size > 0 && days[size - 1] == day) {
+            seconds[size - 1] += elapsedSeconds;
+            prefix[size - 1] += elapsedSeconds;
+            return;
+        }
+        int index = Arrays.binarySearch(days, 0, size, day);
+        if (index >= 0) {
+            seconds[index] += elapsedSeconds;
+            updatePrefix(index);
+            return;
+        }
+        index = -index - 1;
+        if (size == days.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            days = Arrays.copyOf(days, capacity);
+            seconds = Arrays.copyOf(seconds, capacity);
+            prefix = Arrays.copyOf(prefix, capacity);
+        }
+        System.arraycopy(days, index, days, index + 1, size - index);
+        System.arraycopy(seconds, index, seconds, index + 1, size - index);
+        System.arraycopy(prefix, index, prefix, index + 1, size - index);
+        days[index] = day;
+        seconds[index] = elapsedSeconds;
+        size++;
+        updatePrefix(index);
+    }
+
+    private void updatePrefix(int from) {
+        long sum = from == 0 ? 0 : prefix[from - 1];
+        for (int i = from; i < size; i++) {
+            sum += seconds[i];
+            prefix[i] = sum;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int dayAt(int index) {
+        return days[index];
+    }
+
+    public long secondsAt(int index) {
+        return seconds[index];
+    }
+
+    // Index of the given day, or -(insertion point) - 1 like Arrays.binarySearch
+    public int indexOf(int day) {
+        return Arrays.binarySearch(days, 0, size, day);
+    }
+
+    public long get(int day) {
+        int index = indexOf(day);
+        return index >= 0 ? seconds[index] : 0;
+    }
+
+    public long total() {
+        return size == 0 ? 0 : prefix[size - 1];
+    }
+
+    // Seconds spent from the first to the last day, both included
+    public long sum(int firstDay, int lastDay) {
+        int from = lowerBound(firstDay);
+        int to = (lastDay == Integer.MAX_VALUE ? size : lowerBound(lastDay + 1)) - 1;
+        return sumAt(from, to);
+    }
+
+    // Seconds of the entries between the given indexes, both included
+    public long sumAt(int fromIndex, int toIndex) {
+        if (toIndex < fromIndex) {
+            return 0;
+        }
+        return prefix[toIndex] - (fromIndex == 0 ? 0 : prefix[fromIndex - 1]);
+    }
+
+    // Index of the first entry on or after the given day
+    public int lowerBound(int day) {
+        int index = indexOf(day);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public DailyDurations copy() {
+        DailyDurations copy = new DailyDurations(Math.max(4, size));
+        System.arraycopy(days, 0, copy.days, 0, size);
+        System.arraycopy(seconds, 0, copy.seconds, 0, size);
+        System.arraycopy(prefix, 0, copy.prefix, 0, size);
+        copy.size = size;
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof DailyDurations d && size == d.size
+                && Arrays.equals(days, 0, size, d.days, 0, size)
+                && Arrays.equals(seconds, 0, size, d.seconds, 0, size);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++) {
+            hash = 31 * (31 * hash + days[i]) + Long.hashCode(seconds[i]);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            sb.append(i == 0 ? "" : ", ").append(LocalDate.ofEpochDay(days[i])).append('=').append(seconds[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    static class Serializer extends StdSerializer<DailyDurations> {
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(DailyDurations.class);
+        }
+
+        @Override
+        public void serialize(DailyDurations value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            for (int i = 0; i < value.size; i++) {
+                gen.writeNumberField(LocalDate.ofEpochDay(value.days[i]).toString(), value.seconds[i]);
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    static class Deserializer extends StdDeserializer<DailyDurations> {
+        private static final long serialVersionUID = 1L;
+
+        Deserializer() {
+            super(DailyDurations.class);
+        }
+
+        @Override
+        public DailyDurations deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            int[] days = new int[16];
+            long[] seconds = new long[16];
+            int size = 0;
+            JsonToken token = p.currentToken() == JsonToken.START_OBJECT ? p.nextToken() : p.currentToken();
+            for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+                if (size == days.length) {
+                    days = Arrays.copyOf(days, size * 2);
+                    seconds = Arrays.copyOf(seconds, size * 2);
+                }
+                days[size] = (int) LocalDate.parse(p.currentName()).toEpochDay();
+                p.nextToken();
+                seconds[size++] = p.getLongValue();
+            }
+
+            // Files written from a HashMap are not sorted: sort once instead of inserting in the middle
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) days[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            DailyDurations result = new DailyDurations(Math.max(4, size));
+            for (long o : order) {
+                int i = (int) o;
+                result.add(days[i], seconds[i]);
+            }
+            return result;
+        }
+    }
+}
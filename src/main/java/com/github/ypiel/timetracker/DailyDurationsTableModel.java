@@ -0,0 +1,235 @@
+package com.github.ypiel.timetracker;
+
+import javax.swing.table.AbstractTableModel;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+
+// Daily durations table read from a DailyDurations, one row per day in date order.
+// Only the days from firstDay to lastDay are shown, as a window of indexes found by binary search, and with a
+// grouping each week or month is followed by a subtotal row read from the prefix sums. A row is computed when
+// the table asks for it, so a ticket with years of history costs the same as a new one.
+// The DailyDurations is the model's own copy, the service credits the live one on its clock thread: a tick
+// only brings one day of the copy up to date, then its duration cell and its subtotal are updated, or a row is
+// inserted for a new day.
+class DailyDurationsTableModel extends AbstractTableModel {
+    private final static long serialVersionUID = 1L;
+
+    final static int DAILY_TABLE_COLUMN_DAY = 0;
+    final static int DAILY_TABLE_COLUMN_DURATION = 1;
+
+    private final static String[] COLUMNS = {"Jour", "Duration"};
+
+    enum Grouping {
+        NONE("None"), WEEK("Week"), MONTH("Month");
+
+        private final String label;
+
+        Grouping(String label) {
+            this.label = label;
+        }
+
+        // First day of the week (monday) or of the month of the given day
+        int periodStart(int day) {
+            return switch (this) {
+                case NONE -> day;
+                case WEEK -> day - Math.floorMod(day + 3, 7);
+                case MONTH -> (int) LocalDate.ofEpochDay(day).withDayOfMonth(1).toEpochDay();
+            };
+        }
+
+        int nextPeriod(int start) {
+            return switch (this) {
+                case NONE -> start + 1;
+                case WEEK -> start + 7;
+                case MONTH -> (int) LocalDate.ofEpochDay(start).plusMonths(1).toEpochDay();
+            };
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private transient DailyDurations durations;
+    private int firstDay = Integer.MIN_VALUE;
+    private int lastDay = Integer.MAX_VALUE;
+    private Grouping grouping = Grouping.NONE;
+
+    // Entries shown: [from, to[ of durations
+    private int from;
+    private int to;
+    private int size;
+    // Index of the first entry of each week or month, only with a grouping
+    private int[] groups = new int[0];
+    private int groupCount;
+    private int rowCount;
+
+    // A copy taken under the service lock, null to empty the table
+    void setDurations(DailyDurations durations) {
+        this.durations = durations;
+        refresh();
+    }
+
+    // Days shown, both included, Integer.MIN_VALUE/MAX_VALUE for no bound
+    void setRange(int firstDay, int lastDay) {
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+        refresh();
+    }
+
+    void setGrouping(Grouping grouping) {
+        this.grouping = grouping;
+        refresh();
+    }
+
+    boolean isSubtotal(int row) {
+        return grouping != Grouping.NONE && row == subtotalRow(group(row));
+    }
+
+    // seconds: the live duration of the day, read under the service lock
+    void dayChanged(int day, long seconds) {
+        if (durations == null) {
+            return;
+        }
+        long credited = seconds - durations.get(day);
+        if (credited != 0) {
+            durations.add(day, credited);
+        }
+        int index = durations.indexOf(day);
+        if (index < 0) {
+            return;
+        }
+        if (durations.size() != size) {
+            // A new day, once a day: the window and the groups move
+            int groupsBefore = groupCount;
+            window();
+            rowCount = rowCount();
+            if (day < firstDay || day > lastDay) {
+                return;
+            }
+            int row = rowOf(index);
+            if (groupCount != groupsBefore) {
+                // Alone in a new week or month, with its subtotal
+                fireTableRowsInserted(row, row + groupCount - groupsBefore);
+            } else {
+                fireTableRowsInserted(row, row);
+                updateSubtotal(index);
+            }
+        } else if (day >= firstDay && day <= lastDay) {
+            fireTableCellUpdated(rowOf(index), DAILY_TABLE_COLUMN_DURATION);
+            updateSubtotal(index);
+        }
+    }
+
+    private void updateSubtotal(int index) {
+        if (grouping != Grouping.NONE) {
+            fireTableCellUpdated(subtotalRow(groupOf(index)), DAILY_TABLE_COLUMN_DURATION);
+        }
+    }
+
+    private void refresh() {
+        window();
+        rowCount = rowCount();
+        fireTableDataChanged();
+    }
+
+    // One binary search per bound and per week or month shown
+    private void window() {
+        if (durations == null) {
+            from = to = size = groupCount = 0;
+            return;
+        }
+        size = durations.size();
+        from = durations.lowerBound(firstDay);
+        to = lastDay == Integer.MAX_VALUE ? size : durations.lowerBound(lastDay + 1);
+        groupCount = 0;
+        if (grouping == Grouping.NONE) {
+            return;
+        }
+        for (int i = from; i < to; i = durations.lowerBound(grouping.nextPeriod(grouping.periodStart(durations.dayAt(i))))) {
+            if (groupCount == groups.length) {
+                groups = Arrays.copyOf(groups, Math.max(16, groupCount * 2));
+            }
+            groups[groupCount++] = i;
+        }
+    }
+
+    private int rowCount() {
+        return to - from + groupCount;
+    }
+
+    private int groupEnd(int group) {
+        return group + 1 < groupCount ? groups[group + 1] : to;
+    }
+
+    private int subtotalRow(int group) {
+        return groupEnd(group) - from + group;
+    }
+
+    // Group holding the given entry
+    private int groupOf(int index) {
+        int group = Arrays.binarySearch(groups, 0, groupCount, index);
+        return group >= 0 ? group : -group - 2;
+    }
+
+    // Group holding the given row, each group starts at groups[g] - from + g
+    private int group(int row) {
+        int low = 0;
+        int high = groupCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (groups[mid] - from + mid <= row) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int rowOf(int index) {
+        return grouping == Grouping.NONE ? index - from : index - from + groupOf(index);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == DAILY_TABLE_COLUMN_DURATION ? Long.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int index = from + row;
+        if (grouping != Grouping.NONE) {
+            int group = group(row);
+            if (row == subtotalRow(group)) {
+                if (column == DAILY_TABLE_COLUMN_DURATION) {
+                    return durations.sumAt(groups[group], groupEnd(group) - 1);
+                }
+                LocalDate start = LocalDate.ofEpochDay(grouping.periodStart(durations.dayAt(groups[group])));
+                return grouping == Grouping.WEEK ? "Week of " + start : "Month " + YearMonth.from(start);
+            }
+            index -= group;
+        }
+        if (column == DAILY_TABLE_COLUMN_DAY) {
+            return LocalDate.ofEpochDay(durations.dayAt(index)).toString();
+        }
+        return durations.secondsAt(index);
+    }
+}
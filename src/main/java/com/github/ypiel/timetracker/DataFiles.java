@@ -0,0 +1,79 @@
+package com.github.ypiel.timetracker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Chemins des fichiers, shared by the application and the command line
+@Slf4j
+final class DataFiles {
+
+    static final Path DIR = Paths.get(System.getProperty("time-tracker.dir", System.getProperty("user.home") + "/time-tracker"));
+
+    // time-tracker.device: name of this computer when DIR is shared with other ones, a synced folder for instance.
+    // Each device then only writes in devices/<device>/: its own snapshot, journal, archive and backups, and the
+    // changes it publishes for the other devices (see DeviceSync). Without it the files are directly in DIR.
+    static final String DEVICE = device(System.getProperty("time-tracker.device"));
+    static final Path DEVICES = DIR.resolve("devices");
+    static final Path STATE = DEVICE == null ? DIR : DEVICES.resolve(DEVICE);
+
+    static final Path SNAPSHOT = STATE.resolve("time-tracker.json");
+    static final Path JOURNAL = STATE.resolve("time-tracker.journal");
+    static final Path ARCHIVE = STATE.resolve("archive");
+
+    // time-tracker.storage: "sharded" for the catalog and the month shards of ShardedStore, "snapshot" for the
+    // whole history in time-tracker.json, written with the configured codec. Switching is done by the next compaction.
+    // The devices always use the sharded storage, the catalog keeps what was merged from the other devices.
+    static final boolean SHARDED = DEVICE != null || !"snapshot".equals(System.getProperty("time-tracker.storage", "sharded"));
+
+    private DataFiles() {
+    }
+
+    // Catalog or snapshot with the journal replayed on top of it, the caller holds the journal lock.
+    // The catalog wins, the snapshot is only there until the first compaction in the sharded storage.
+    // The first time a device starts, it takes the files which were in DIR before the devices.
+    static List<Ticket> load(Journal journal, ShardedStore store) throws IOException {
+        if (DEVICE != null && !store.exists() && !Files.exists(SNAPSHOT)) {
+            Journal shared = new Journal(DIR.resolve(JOURNAL.getFileName()));
+            Closeable lock = shared.lock();
+            try {
+                log.info("First start of device {}, time-tracker data taken from {}.", DEVICE, DIR);
+                List<Ticket> tickets = load(shared, new ShardedStore(DIR), DIR.resolve(SNAPSHOT.getFileName()));
+                journal.replay(tickets, store.crc());
+                return tickets;
+            } finally {
+                lock.close();
+            }
+        }
+        return load(journal, store, SNAPSHOT);
+    }
+
+    private static List<Ticket> load(Journal journal, ShardedStore store, Path snapshot) throws IOException {
+        if (store.exists()) {
+            List<Ticket> tickets = store.read();
+            journal.replay(tickets, store.crc());
+            return tickets;
+        }
+        List<Ticket> tickets = new ArrayList<>();
+        byte[] content = new byte[0];
+        if (Files.exists(snapshot)) {
+            content = Files.readAllBytes(snapshot);
+            StorageCodec codec = StorageCodec.detect(content);
+            log.info("time-tracker data loaded from {}, format: {}.", snapshot, codec.name());
+            tickets = codec.read(content);
+        }
+        journal.replay(tickets, PersistenceWorker.crc(content));
+        return tickets;
+    }
+
+    // Used as a directory name
+    private static String device(String name) {
+        return name == null || name.isBlank() ? null : name.trim().replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
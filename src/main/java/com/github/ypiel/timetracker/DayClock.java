@@ -0,0 +1,39 @@
+package com.github.ypiel.timetracker;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// Epoch day of a point in time, the bounds of the last day computed are kept so that asking for the
+// current day every second doesn't allocate until the next local midnight.
+class DayClock {
+
+    private int day;
+    private long dayStart = Long.MAX_VALUE;
+    private long nextMidnight = Long.MIN_VALUE;
+
+    int today() {
+        return dayOf(System.currentTimeMillis());
+    }
+
+    int dayOf(long epochMillis) {
+        if (epochMillis >= nextMidnight || epochMillis < dayStart) {
+            update(epochMillis);
+        }
+        return day;
+    }
+
+    // First millisecond of the day after the one of the given time
+    long endOfDay(long epochMillis) {
+        dayOf(epochMillis);
+        return nextMidnight;
+    }
+
+    private void update(long epochMillis) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(epochMillis), zone);
+        day = (int) date.toEpochDay();
+        dayStart = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        nextMidnight = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Changes exchanged between the devices sharing the data directory, each one only writing its own files.
+// A device appends its journal records to devices/<device>/changes/<yyyy-MM>.log and never rewrites them; the
+// other devices read each log from the offset they stopped at, so a merge only reads what was appended since.
+// The durations are increments of the counters of the device which tracked them: they add up in any order and
+// are applied once, as the offsets merged are committed in the catalog with the tickets they were applied to.
+// The fields go to the latest change, see Journal.applyRemote. Only used by the persistence thread.
+@Slf4j
+class DeviceSync {
+
+    // Records of a log up to offset, log being <device>/<yyyy-MM>
+    record Batch(String log, long offset, List<Journal.Record> records) {
+    }
+
+    private static final String CHANGES = "changes";
+
+    private final Path devicesDir;
+    private final String device;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // log -> offset read, null until the offsets of the catalog are known
+    private Map<String, Long> read;
+
+    DeviceSync(Path devicesDir, String device) {
+        this.devicesDir = devicesDir;
+        this.device = device;
+    }
+
+    boolean started() {
+        return read != null;
+    }
+
+    // Offsets already merged in the loaded catalog
+    void start(Map<String, Long> synced) {
+        read = new HashMap<>(synced);
+    }
+
+    // Records of this device, appended to the log of the month
+    void publish(List<Journal.Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Journal.Record r : records) {
+            out.write(mapper.writeValueAsBytes(r));
+            out.write('\n');
+        }
+        Path file = devicesDir.resolve(device).resolve(CHANGES).resolve(YearMonth.now() + ".log");
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    // Complete lines appended to the logs of the other devices since the previous call.
+    // A log is only read again when its size changed.
+    List<Batch> poll() throws IOException {
+        List<Batch> batches = new ArrayList<>();
+        if (!Files.isDirectory(devicesDir)) {
+            return batches;
+        }
+        try (Stream<Path> devices = Files.list(devicesDir)) {
+            for (Path dir : (Iterable<Path>) devices.sorted()::iterator) {
+                String other = dir.getFileName().toString();
+                if (other.equals(device) || !Files.isDirectory(dir.resolve(CHANGES))) {
+                    continue;
+                }
+                try (Stream<Path> logs = Files.list(dir.resolve(CHANGES))) {
+                    for (Path file : (Iterable<Path>) logs.sorted()::iterator) {
+                        String name = file.getFileName().toString();
+                        if (name.endsWith(".log")) {
+                            Batch batch = read(other + "/" + name.substring(0, name.length() - 4), file);
+                            if (batch != null) {
+                                batches.add(batch);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return batches;
+    }
+
+    private Batch read(String name, Path file) throws IOException {
+        long from = read.getOrDefault(name, 0L);
+        byte[] content;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = channel.size();
+            if (end < from) {
+                log.warn("Change log {} got shorter, {} bytes expected and {} found.", file, from, end);
+            }
+            if (end <= from) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - from));
+            while (buffer.hasRemaining() && channel.read(buffer, from + buffer.position()) >= 0) {
+                // read until the end
+            }
+            content = buffer.array();
+        }
+        // The last line may still be on its way
+        int length = content.length;
+        while (length > 0 && content[length - 1] != '\n') {
+            length--;
+        }
+        if (length == 0) {
+            return null;
+        }
+        List<Journal.Record> records = new ArrayList<>();
+        for (String line : new String(content, 0, length, StandardCharsets.UTF_8).split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                records.add(mapper.readValue(line, Journal.Record.class));
+            } catch (JsonProcessingException e) {
+                log.warn("Can't read change log record {} of {}.", line, file);
+            }
+        }
+        long offset = from + length;
+        read.put(name, offset);
+        return new Batch(name, offset, records);
+    }
+}
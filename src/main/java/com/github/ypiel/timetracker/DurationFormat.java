@@ -0,0 +1,42 @@
+package com.github.ypiel.timetracker;
+
+// Durations in seconds written as HH:MM:SS, without String.format; kept apart from the Swing renderer
+// so that the command line doesn't load AWT
+class DurationFormat {
+
+    static String format(long seconds) {
+        char[] chars = new char[24];
+        return new String(chars, 0, format(seconds, chars));
+    }
+
+    // Write the duration as HH:MM:SS at the beginning of the buffer and return its length
+    static int format(long seconds, char[] buffer) {
+        int pos = 0;
+        if (seconds < 0) {
+            buffer[pos++] = '-';
+            seconds = -seconds;
+        }
+        long hrs = seconds / 3600;
+        int mins = (int) ((seconds % 3600) / 60);
+        int secs = (int) (seconds % 60);
+        if (hrs < 10) {
+            buffer[pos++] = '0';
+        }
+        int digits = 1;
+        for (long h = hrs; h >= 10; h /= 10) {
+            digits++;
+        }
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buffer[i] = (char) ('0' + hrs % 10);
+            hrs /= 10;
+        }
+        pos += digits;
+        buffer[pos++] = ':';
+        buffer[pos++] = (char) ('0' + mins / 10);
+        buffer[pos++] = (char) ('0' + mins % 10);
+        buffer[pos++] = ':';
+        buffer[pos++] = (char) ('0' + secs / 10);
+        buffer[pos++] = (char) ('0' + secs % 10);
+        return pos;
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.ypiel.timetracker;
+
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.util.Map;
+
+// Renders a duration in seconds as HH:MM:SS. Duration cells are repainted every second, so the digits
+// are written in a reused buffer and drawn as is instead of going through String.format and a label text.
+class DurationRenderer extends DefaultTableCellRenderer {
+    private static final long serialVersionUID = 1L;
+    private static final Map<?, ?> DESKTOP_HINTS = (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+
+    private final char[] buffer = new char[24];
+    private final Insets insets = new Insets(0, 0, 0, 0);
+    private int length;
+
+    @Override
+    protected void setValue(Object value) {
+        length = value instanceof Number n ? DurationFormat.format(n.longValue(), buffer) : 0;
+        setText("");
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (length == 0) {
+            return;
+        }
+        if (DESKTOP_HINTS != null && g instanceof Graphics2D g2) {
+            g2.addRenderingHints(DESKTOP_HINTS);
+        }
+        Font font = getFont();
+        FontMetrics fm = g.getFontMetrics(font);
+        getInsets(insets);
+        int y = insets.top + (getHeight() - insets.top - insets.bottom - fm.getHeight()) / 2 + fm.getAscent();
+        g.setFont(font);
+        g.setColor(getForeground());
+        g.drawChars(buffer, 0, length, insets.left, y);
+    }
+}
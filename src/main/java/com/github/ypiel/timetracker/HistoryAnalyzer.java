@@ -0,0 +1,208 @@
+package com.github.ypiel.timetracker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// What changed from one backup to the next one, and the tickets as they were backed up at a past date.
+// The backups are read on a fork-join pool with one thread per core: first the full backups the deltas are
+// based on, each one once, then all the others. They are read like at startup, the days staying unparsed
+// (raw JSON, binary or in the shards), and the days of a ticket are only parsed when its duration changed
+// from one backup to the next. The diffs of the successive pairs are computed in parallel too.
+class HistoryAnalyzer {
+
+    record StatusChange(String ticket, Status from, Status to) {
+    }
+
+    // Dates as yyyy-MM-dd. added: seconds added per day, the time of the deleted tickets isn't taken off.
+    record Diff(String from, String to, List<String> created, List<String> deleted,
+                List<StatusChange> statusChanges, SortedMap<String, Long> added) {
+    }
+
+    private record Snapshot(LocalDate date, Map<String, Ticket> tickets) {
+    }
+
+    private final BackupStore backups;
+    private final Path legacyDir;
+
+    // legacyDir: where the time-tracker-<day of year>.json copies were written
+    HistoryAnalyzer(BackupStore backups, Path legacyDir) {
+        this.backups = backups;
+        this.legacyDir = legacyDir;
+    }
+
+    // Backups and older copies by date, a backup wins over a copy of the same date
+    private List<BackupStore.Backup> backups() throws IOException {
+        SortedMap<LocalDate, BackupStore.Backup> all = new TreeMap<>();
+        for (BackupStore.Backup backup : BackupStore.legacy(legacyDir)) {
+            all.put(backup.date(), backup);
+        }
+        for (BackupStore.Backup backup : backups.backups()) {
+            all.put(backup.date(), backup);
+        }
+        return List.copyOf(all.values());
+    }
+
+    // Between the successive backups from the first to the last date, both included
+    List<Diff> diffs(LocalDate from, LocalDate to) throws IOException {
+        List<BackupStore.Backup> selected = new ArrayList<>();
+        for (BackupStore.Backup backup : backups()) {
+            if (!backup.date().isBefore(from) && !backup.date().isAfter(to)) {
+                selected.add(backup);
+            }
+        }
+        return parallel(pool -> {
+            List<Snapshot> snapshots = read(pool, selected);
+            return pool.submit(() -> IntStream.range(1, snapshots.size()).parallel()
+                    .mapToObj(i -> diff(snapshots.get(i - 1), snapshots.get(i)))
+                    .toList()).get();
+        });
+    }
+
+    // Tickets of the latest backup on or before the date, null if there is none
+    List<Ticket> at(LocalDate date) throws IOException {
+        BackupStore.Backup found = null;
+        for (BackupStore.Backup backup : backups()) {
+            if (!backup.date().isAfter(date)) {
+                found = backup;
+            }
+        }
+        if (found == null) {
+            return null;
+        }
+        BackupStore.Backup backup = found;
+        return parallel(pool -> read(pool, List.of(backup)).get(0).tickets().values().stream().toList());
+    }
+
+    private interface Task<T> {
+        T run(ForkJoinPool pool) throws Exception;
+    }
+
+    private static <T> T parallel(Task<T> task) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return task.run(pool);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Can't read the backups.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the backups.", e);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Can't read the backups.", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<Snapshot> read(ForkJoinPool pool, List<BackupStore.Backup> selected) throws Exception {
+        Set<LocalDate> baseDates = new HashSet<>();
+        for (BackupStore.Backup backup : selected) {
+            if (backup.base() != null) {
+                baseDates.add(backup.base());
+            }
+        }
+        Map<LocalDate, BackupStore.Backup> all = new HashMap<>();
+        for (BackupStore.Backup backup : backups.backups()) {
+            all.put(backup.date(), backup);
+        }
+        Map<LocalDate, byte[]> bases = pool.submit(() -> baseDates.parallelStream()
+                .filter(all::containsKey)
+                .collect(Collectors.toMap(date -> date, date -> unchecked(() -> BackupStore.content(all.get(date)))))).get();
+        return pool.submit(() -> selected.parallelStream()
+                .map(backup -> {
+                    if (backup.base() != null && !bases.containsKey(backup.base())) {
+                        throw new UncheckedIOException(new IOException("Missing base of the backup of " + backup.date()));
+                    }
+                    List<Ticket> tickets = unchecked(() -> BackupStore.read(backup, bases.get(backup.base())));
+                    Map<String, Ticket> byId = new LinkedHashMap<>();
+                    for (Ticket ticket : tickets) {
+                        byId.put(ticket.getId(), ticket);
+                    }
+                    return new Snapshot(backup.date(), byId);
+                })
+                .toList()).get();
+    }
+
+    private static Diff diff(Snapshot before, Snapshot after) {
+        List<String> created = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        List<StatusChange> statusChanges = new ArrayList<>();
+        SortedMap<String, Long> added = new TreeMap<>();
+        for (Ticket ticket : after.tickets().values()) {
+            Ticket previous = before.tickets().get(ticket.getId());
+            if (previous == null) {
+                created.add(ticket.getId());
+                added(new DailyDurations(), ticket.getDurationsPerDay(), added);
+                continue;
+            }
+            if (previous.getStatus() != ticket.getStatus()) {
+                statusChanges.add(new StatusChange(ticket.getId(), previous.getStatus(), ticket.getStatus()));
+            }
+            // The days are only parsed when there is some time to find
+            if (previous.getDuration() != ticket.getDuration()) {
+                added(previous.getDurationsPerDay(), ticket.getDurationsPerDay(), added);
+            }
+        }
+        for (String id : before.tickets().keySet()) {
+            if (!after.tickets().containsKey(id)) {
+                deleted.add(id);
+            }
+        }
+        return new Diff(before.date().toString(), after.date().toString(), created, deleted, statusChanges, added);
+    }
+
+    private static void added(DailyDurations a, DailyDurations b, SortedMap<String, Long> added) {
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            int dayA = i < a.size() ? a.dayAt(i) : Integer.MAX_VALUE;
+            int dayB = j < b.size() ? b.dayAt(j) : Integer.MAX_VALUE;
+            int day;
+            long seconds;
+            if (dayA == dayB) {
+                day = dayA;
+                seconds = b.secondsAt(j++) - a.secondsAt(i++);
+            } else if (dayA < dayB) {
+                day = dayA;
+                seconds = -a.secondsAt(i++);
+            } else {
+                day = dayB;
+                seconds = b.secondsAt(j++);
+            }
+            if (seconds != 0) {
+                added.merge(LocalDate.ofEpochDay(day).toString(), seconds, Long::sum);
+            }
+        }
+    }
+
+    private interface Read<T> {
+        T read() throws IOException;
+    }
+
+    private static <T> T unchecked(Read<T> read) {
+        try {
+            return read.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Local HTTP/JSON API of the TrackingService, for the IDE plugins, git hooks and browser extensions.
+// Bound to the loopback address, each exchange runs on its own virtual thread and never waits for the EDT:
+// the reads are answered from the service snapshot without any lock, the writes wait for the service lock.
+// Ticket ids are URLs, they are sent URL encoded in the paths.
+//
+//   GET    /api/tickets[?all=true]              the tickets without todos and days, Done ones only with all
+//   POST   /api/tickets                         {"order", "id", "description", "status"}
+//   GET    /api/tickets/{id}                    the ticket with its todos and days
+//   PATCH  /api/tickets/{id}                    {"order", "id", "description", "status"}, all optional
+//   DELETE /api/tickets/{id}
+//   POST   /api/tickets/{id}/todos              {"description", "status"}
+//   PATCH  /api/tickets/{id}/todos/{index}      {"description", "status"}, all optional
+//   DELETE /api/tickets/{id}/todos/{index}
+//   GET    /api/tracking                        {"ticket", "todo", "running"}
+//   PUT    /api/tracking                        {"ticket", "todo", "running"}, all optional, "ticket": null tracks nothing
+//   GET    /api/report[?from&to&group]          rows of the ReportEngine, this week by ticket by default
+//   GET    /api/export[?format&from&to]         time entries streamed as csv (default), jsonl or ics, see TimeEntries
+//   POST   /api/import[?format]                 time entries streamed in the body, csv by default
+//   GET    /api/events                          server-sent events: tick, tracking and ticket
+//
+// Requests which change something must have the X-Time-Tracker header: a web page can't send it to another
+// origin without a CORS preflight, which is never accepted. The Host header is checked against DNS rebinding.
+@Slf4j
+class HttpApi {
+
+    static final int PORT = Integer.getInteger("time-tracker.http.port", 7411);
+    static final String HEADER = "X-Time-Tracker";
+
+    // Events kept for a slow stream client before it is dropped
+    private static final int EVENT_QUEUE = 256;
+    private static final long KEEP_ALIVE_SECONDS = 15;
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private static final class ApiError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        ApiError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static final class EventStream {
+        private final BlockingQueue<String> events = new ArrayBlockingQueue<>(EVENT_QUEUE);
+        private volatile boolean dropped = false;
+    }
+
+    private final TrackingService service;
+    private final List<EventStream> streams = new CopyOnWriteArrayList<>();
+    private final TrackingService.Listener listener = new Events();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    HttpApi(TrackingService service) {
+        this.service = service;
+    }
+
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), PORT), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+        service.addListener(listener);
+        server.start();
+        log.info("time-tracker API listening on http://{}:{}/api/.", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    void stop() {
+        service.removeListener(listener);
+        server.stop(0);
+        // Wakes up the event streams
+        executor.shutdownNow();
+    }
+
+    // The port actually bound, PORT may be 0 for any free port
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            checkHost(exchange);
+            if (!method.equals("GET") && !exchange.getRequestHeaders().containsKey(HEADER)) {
+                throw new ApiError(403, "Missing " + HEADER + " header.");
+            }
+            List<String> path = segments(exchange);
+            if (path.equals(List.of("events")) && method.equals("GET")) {
+                stream(exchange);
+                return;
+            }
+            if (path.equals(List.of("export")) && method.equals("GET")) {
+                export(exchange);
+                return;
+            }
+            JsonNode response = route(method, path, exchange);
+            send(exchange, method.equals("POST") ? 201 : 200, response);
+        } catch (ApiError e) {
+            send(exchange, e.status, error(e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (JsonProcessingException e) {
+            send(exchange, 400, error("Invalid JSON: " + e.getOriginalMessage()));
+        } catch (IOException e) {
+            log.debug("API client gone.", e);
+        } catch (RuntimeException e) {
+            log.error("API request {} {} failed.", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            send(exchange, 500, error(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private JsonNode route(String method, List<String> path, HttpExchange exchange) throws IOException {
+        String resource = path.isEmpty() ? "" : path.get(0);
+        switch (resource) {
+            case "tickets" -> {
+                if (path.size() == 1) {
+                    return switch (method) {
+                        case "GET" -> tickets("true".equals(query(exchange).get("all")));
+                        case "POST" -> createTicket(body(exchange));
+                        default -> throw notAllowed(method);
+                    };
+                }
+                if (path.size() == 2 && method.equals("GET")) {
+                    Ticket copy = service.snapshot(path.get(1));
+                    if (copy == null) {
+                        throw new ApiError(404, "Unknown ticket " + path.get(1) + ".");
+                    }
+                    return TicketJson.MAPPER.valueToTree(copy);
+                }
+                Ticket ticket = ticket(path.get(1));
+                if (path.size() == 2) {
+                    return switch (method) {
+                        case "PATCH" -> updateTicket(ticket, body(exchange));
+                        case "DELETE" -> {
+                            service.deleteTicket(ticket);
+                            yield NODES.objectNode();
+                        }
+                        default -> throw notAllowed(method);
+                    };
+                }
+                if (!path.get(2).equals("todos") || path.size() > 4) {
+                    break;
+                }
+                if (path.size() == 3) {
+                    if (!method.equals("POST")) {
+                        throw notAllowed(method);
+                    }
+                    JsonNode body = body(exchange);
+                    TodoItem todo = service.addTodo(ticket, text(body, "description"), status(body));
+                    return service.read(() -> todo(ticket, todo));
+                }
+                TodoItem todo = todo(ticket, path.get(3));
+                return switch (method) {
+                    case "PATCH" -> {
+                        JsonNode body = body(exchange);
+                        if (body.has("description")) {
+                            service.setTodoDescription(ticket, todo, text(body, "description"));
+                        }
+                        if (body.has("status")) {
+                            service.setTodoStatus(ticket, todo, status(body));
+                        }
+                        yield service.read(() -> todo(ticket, todo));
+                    }
+                    case "DELETE" -> {
+                        service.deleteTodo(ticket, todo);
+                        yield NODES.objectNode();
+                    }
+                    default -> throw notAllowed(method);
+                };
+            }
+            case "tracking" -> {
+                if (path.size() == 1) {
+                    return switch (method) {
+                        case "GET" -> service.read(this::tracking);
+                        case "PUT" -> track(body(exchange));
+                        default -> throw notAllowed(method);
+                    };
+                }
+            }
+            case "report" -> {
+                if (path.size() == 1 && method.equals("GET")) {
+                    return report(query(exchange));
+                }
+            }
+            case "import" -> {
+                if (path.size() == 1) {
+                    if (!method.equals("POST")) {
+                        throw notAllowed(method);
+                    }
+                    TimeEntries.Format format = TimeEntries.Format.of(query(exchange).getOrDefault("format", "csv"));
+                    TimeEntries.Reader reader = TimeEntries.reader(exchange.getRequestBody(), format);
+                    return TicketJson.MAPPER.valueToTree(service.importEntries(reader,
+                            result -> log.debug("{} time entries imported.", result.entries())));
+                }
+            }
+            default -> {
+            }
+        }
+        throw new ApiError(404, "Unknown resource " + exchange.getRequestURI().getPath() + ".");
+    }
+
+    private JsonNode tickets(boolean all) {
+        ArrayNode array = NODES.arrayNode();
+        for (Ticket ticket : service.snapshot()) {
+            if (all || ticket.getStatus() != Status.Done) {
+                array.add(summary(ticket));
+            }
+        }
+        return array;
+    }
+
+    private JsonNode createTicket(JsonNode body) {
+        String description = body.hasNonNull("description") ? body.get("description").asText() : "";
+        Ticket ticket = service.createTicket(body.path("order").asInt(1), text(body, "id"), description, status(body));
+        return service.read(() -> summary(ticket));
+    }
+
+    private JsonNode updateTicket(Ticket ticket, JsonNode body) {
+        // Each field is checked and journaled on its own, like the cells of the ticket table
+        if (body.has("order")) {
+            service.setOrder(ticket, body.get("order").asInt());
+        }
+        if (body.has("id")) {
+            service.rename(ticket, text(body, "id"));
+        }
+        if (body.has("description")) {
+            service.setDescription(ticket, body.get("description").asText());
+        }
+        if (body.has("status")) {
+            service.setStatus(ticket, status(body));
+        }
+        return service.read(() -> summary(ticket));
+    }
+
+    private JsonNode track(JsonNode body) {
+        if (body.has("ticket")) {
+            JsonNode id = body.get("ticket");
+            Ticket ticket = id.isNull() ? null : ticket(id.asText());
+            TodoItem todo = ticket == null || !body.hasNonNull("todo") ? null : todo(ticket, body.get("todo").asText());
+            service.track(ticket, todo);
+        }
+        if (body.has("running")) {
+            service.setRunning(body.get("running").asBoolean());
+        }
+        return service.read(this::tracking);
+    }
+
+    private JsonNode report(Map<String, String> query) {
+        LocalDate today = LocalDate.now();
+        LocalDate from = query.containsKey("from") ? Cli.day(query.get("from")) : today.with(DayOfWeek.MONDAY);
+        LocalDate to = query.containsKey("to") ? Cli.day(query.get("to")) : today;
+        ReportEngine.GroupBy groupBy = query.containsKey("group") ? Cli.groupBy(query.get("group")) : ReportEngine.GroupBy.TICKET;
+        return TicketJson.MAPPER.valueToTree(new ReportEngine(service.snapshot()).report(groupBy, from, to));
+    }
+
+    // Written from the snapshot as it goes, chunked
+    private void export(HttpExchange exchange) throws IOException {
+        Map<String, String> query = query(exchange);
+        TimeEntries.Format format = TimeEntries.Format.of(query.getOrDefault("format", "csv"));
+        LocalDate from = query.containsKey("from") ? Cli.day(query.get("from")) : LocalDate.MIN;
+        LocalDate to = query.containsKey("to") ? Cli.day(query.get("to")) : LocalDate.MAX;
+        exchange.getResponseHeaders().set("Content-Type", format.contentType());
+        exchange.sendResponseHeaders(200, 0);
+        try (TimeEntries.Writer writer = TimeEntries.writer(exchange.getResponseBody(), format)) {
+            TimeEntries.export(service.snapshot(), from, to, writer);
+        }
+    }
+
+    // The following ones are called with the service lock held or on snapshot copies
+
+    private ObjectNode tracking() {
+        ObjectNode node = NODES.objectNode();
+        Ticket ticket = service.trackedTicket();
+        TodoItem todo = service.trackedTodo();
+        node.put("ticket", ticket == null ? null : ticket.getId());
+        node.put("todo", ticket == null || todo == null ? null : TicketIndex.identityIndexOf(ticket.getTodoItems(), todo));
+        node.put("running", service.isRunning());
+        return node;
+    }
+
+    private static ObjectNode summary(Ticket ticket) {
+        ObjectNode node = NODES.objectNode();
+        node.put("order", ticket.getOrder());
+        node.put("id", ticket.getId());
+        node.put("description", ticket.getDescription());
+        node.put("status", ticket.getStatus().name());
+        node.put("duration", ticket.getDuration());
+        return node;
+    }
+
+    private static ObjectNode todo(Ticket ticket, TodoItem todo) {
+        ObjectNode node = NODES.objectNode();
+        node.put("index", TicketIndex.identityIndexOf(ticket.getTodoItems(), todo));
+        node.put("description", todo.getDescription());
+        node.put("status", todo.getStatus().name());
+        node.put("duration", todo.getDuration());
+        return node;
+    }
+
+    private Ticket ticket(String id) {
+        Ticket ticket = service.ticket(id);
+        if (ticket == null) {
+            throw new ApiError(404, "Unknown ticket " + id + ".");
+        }
+        return ticket;
+    }
+
+    private TodoItem todo(Ticket ticket, String index) {
+        return service.read(() -> {
+            List<TodoItem> todos = ticket.getTodoItems();
+            try {
+                int i = Integer.parseInt(index);
+                if (i >= 0 && i < todos.size()) {
+                    return todos.get(i);
+                }
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            throw new ApiError(404, "Ticket " + ticket.getId() + " has no todo " + index + ".");
+        });
+    }
+
+    private static String text(JsonNode body, String field) {
+        JsonNode value = body.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("Missing \"" + field + "\".");
+        }
+        return value.asText();
+    }
+
+    private static Status status(JsonNode body) {
+        return body.hasNonNull("status") ? Cli.status(body.get("status").asText()) : null;
+    }
+
+    private static ApiError notAllowed(String method) {
+        return new ApiError(405, "Method " + method + " not allowed.");
+    }
+
+    private static ObjectNode error(String message) {
+        return NODES.objectNode().put("error", message);
+    }
+
+    private static void checkHost(HttpExchange exchange) {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        String name = host == null ? "" : host.replaceFirst(":\\d+$", "");
+        if (!name.equals("localhost") && !name.equals("127.0.0.1") && !name.equals("[::1]")) {
+            throw new ApiError(403, "Unexpected host " + host + ".");
+        }
+    }
+
+    private static List<String> segments(HttpExchange exchange) {
+        List<String> segments = new ArrayList<>();
+        String path = exchange.getRequestURI().getRawPath().substring("/api/".length());
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+            }
+        }
+        return segments;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw != null) {
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                String key = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static JsonNode body(HttpExchange exchange) throws IOException {
+        JsonNode body = TicketJson.MAPPER.readTree(exchange.getRequestBody());
+        if (body == null || body.isMissingNode()) {
+            return NODES.objectNode();
+        }
+        if (!body.isObject()) {
+            throw new IllegalArgumentException("The body must be a JSON object.");
+        }
+        return body;
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = TicketJson.MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // Server-sent events until the client goes away, a comment is sent when nothing happened for a while
+    private void stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        EventStream stream = new EventStream();
+        streams.add(stream);
+        // The ticks are streamed live
+        service.watch(true);
+        try {
+            OutputStream out = exchange.getResponseBody();
+            String event = ": time-tracker\n\n";
+            while (!stream.dropped) {
+                out.write(event.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                event = stream.events.poll(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+                if (event == null) {
+                    event = ": keep-alive\n\n";
+                }
+            }
+        } catch (InterruptedException e) {
+            // API stopped
+        } finally {
+            streams.remove(stream);
+            service.watch(false);
+        }
+    }
+
+    // Service notifications turned into events, with the service lock held: nothing is built without stream
+    private final class Events implements TrackingService.Listener {
+
+        @Override
+        public void ticketAdded(Ticket ticket) {
+            ticketEvent("added", ticket);
+        }
+
+        @Override
+        public void ticketRemoved(Ticket ticket) {
+            ticketEvent("removed", ticket);
+        }
+
+        @Override
+        public void ticketChanged(Ticket ticket) {
+            ticketEvent("changed", ticket);
+        }
+
+        @Override
+        public void ticketsReloaded() {
+            if (!streams.isEmpty()) {
+                publish("ticket", NODES.objectNode().put("change", "reloaded"));
+            }
+        }
+
+        @Override
+        public void credited(Ticket ticket, TodoItem todo, int epochDay, long seconds) {
+            if (streams.isEmpty()) {
+                return;
+            }
+            ObjectNode node = NODES.objectNode();
+            node.put("ticket", ticket.getId());
+            node.put("todo", todo == null ? null : TicketIndex.identityIndexOf(ticket.getTodoItems(), todo));
+            node.put("day", LocalDate.ofEpochDay(epochDay).toString());
+            node.put("seconds", seconds);
+            node.put("duration", ticket.getDuration());
+            publish("tick", node);
+        }
+
+        @Override
+        public void trackingChanged(Ticket ticket, TodoItem todo, boolean running) {
+            if (!streams.isEmpty()) {
+                publish("tracking", tracking());
+            }
+        }
+
+        private void ticketEvent(String change, Ticket ticket) {
+            if (!streams.isEmpty()) {
+                ObjectNode node = summary(ticket);
+                node.put("change", change);
+                publish("ticket", node);
+            }
+        }
+
+        private void publish(String name, JsonNode data) {
+            String event = "event: " + name + "\ndata: " + data + "\n\n";
+            for (EventStream stream : streams) {
+                if (!stream.events.offer(event)) {
+                    log.warn("API event stream too slow, dropped.");
+                    stream.dropped = true;
+                    streams.remove(stream);
+                }
+            }
+        }
+    }
+}
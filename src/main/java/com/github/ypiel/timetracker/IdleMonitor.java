@@ -0,0 +1,80 @@
+package com.github.ypiel.timetracker;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.AWTEventListener;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Pauses the tracking after time-tracker.idle-minutes without input, 0 (the default) to never pause.
+// The input is the keyboard and the mouse in the windows of the application, and the moves of the mouse
+// pointer anywhere on the screen. The pointer is only sampled while the tracking runs, a few times per period.
+// The pause is done when the idle minutes are over, at the time of the last input: they aren't tracked.
+@Slf4j
+class IdleMonitor {
+
+    static final long IDLE_MINUTES = Long.getLong("time-tracker.idle-minutes", 0);
+
+    private final TrackingService service;
+    private final long idleMillis = IDLE_MINUTES * 60_000;
+    private final Timer timer;
+    // Only used on the EDT
+    private long lastInput = System.currentTimeMillis();
+    private Point lastPointer;
+
+    IdleMonitor(TrackingService service) {
+        this.service = service;
+        this.timer = new Timer((int) Math.max(1000, Math.min(30_000, idleMillis / 4)), e -> check());
+    }
+
+    void start() {
+        if (idleMillis <= 0) {
+            return;
+        }
+        AWTEventListener input = e -> lastInput = System.currentTimeMillis();
+        Toolkit.getDefaultToolkit().addAWTEventListener(input, AWTEvent.KEY_EVENT_MASK | AWTEvent.MOUSE_EVENT_MASK
+                | AWTEvent.MOUSE_MOTION_EVENT_MASK | AWTEvent.MOUSE_WHEEL_EVENT_MASK);
+        service.addListener(new TrackingService.Listener() {
+            @Override
+            public void trackingChanged(Ticket ticket, TodoItem todo, boolean running) {
+                SwingUtilities.invokeLater(() -> update(ticket != null && running));
+            }
+        });
+        update(service.read(() -> service.trackedTicket() != null && service.isRunning()));
+    }
+
+    // Sampled while something is tracked, from now on
+    private void update(boolean tracking) {
+        if (tracking && !timer.isRunning()) {
+            lastInput = System.currentTimeMillis();
+            lastPointer = pointer();
+            timer.start();
+        } else if (!tracking) {
+            timer.stop();
+        }
+    }
+
+    private void check() {
+        Point pointer = pointer();
+        long now = System.currentTimeMillis();
+        if (pointer != null && !pointer.equals(lastPointer)) {
+            lastPointer = pointer;
+            lastInput = now;
+        }
+        if (now - lastInput >= idleMillis) {
+            log.info("No input for {} minutes, tracking paused since the last input.", (now - lastInput) / 60_000);
+            timer.stop();
+            service.pauseAt(System.nanoTime() - (now - lastInput) * 1_000_000);
+        }
+    }
+
+    // null when it is unknown, headless or on another screen device
+    private static Point pointer() {
+        try {
+            PointerInfo info = MouseInfo.getPointerInfo();
+            return info == null ? null : info.getLocation();
+        } catch (HeadlessException | SecurityException e) {
+            return null;
+        }
+    }
+}
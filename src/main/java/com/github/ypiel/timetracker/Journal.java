@@ -0,0 +1,574 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+// Append-only log of the changes done since the last snapshot, time-tracker.json or the catalog.
+// The first line tells which snapshot (crc32 of its content) the records apply to, so a journal
+// left behind by an interrupted compaction is never replayed twice.
+// The records are also what a device publishes to the other ones: the field changes carry their time, and the
+// records of a todo its description, to find it again when the todos of the two devices differ (see merge()).
+// Changes are collected by the TrackingService, the file itself is only touched by the PersistenceWorker, and by the
+// command line in another process; both hold lock() while they read or write it. Only one TrackingService per
+// directory compacts it (lockInstance()), the command line only appends.
+@Slf4j
+class Journal {
+
+    enum Op {
+        BASE,
+        TICKET_CREATED,
+        TICKET_UPDATED,
+        TICKET_DELETED,
+        TODO_CREATED,
+        TODO_UPDATED,
+        TODO_DELETED,
+        DURATION
+    }
+
+    @Data
+    @NoArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    static class Record {
+        private Op op;
+        private Long base;
+        private String ticket;
+        private Integer todo;
+        private String id;
+        private Integer order;
+        private String description;
+        private Status status;
+        private String day;
+        private Long seconds;
+        // ms, for the changes of fields
+        private Long time;
+        // Before the change, for the records of a todo
+        private String todoDescription;
+
+        Record(Op op, String ticket) {
+            this.op = op;
+            this.ticket = ticket;
+        }
+    }
+
+    // Durations are summed in memory between two flushes, per tracked item and day
+    private static final class PendingDuration {
+        private final Ticket ticket;
+        private final TodoItem todo;
+        private final int day;
+        private long seconds;
+
+        private PendingDuration(Ticket ticket, TodoItem todo, int day) {
+            this.ticket = ticket;
+            this.todo = todo;
+            this.day = day;
+        }
+    }
+
+    private final Path file;
+    private final Path lockFile;
+    private final Path instanceFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Record> pending = new ArrayList<>();
+    // Only a few items are tracked between two flushes, a linear scan avoids allocating on each tick
+    private final List<PendingDuration> pendingDurations = new ArrayList<>();
+    private Set<Ticket> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long base;
+    private volatile long size;
+
+    Journal(Path file) {
+        this.file = file;
+        this.lockFile = file.resolveSibling("time-tracker.lock");
+        this.instanceFile = file.resolveSibling("time-tracker.instance");
+    }
+
+    // Held by the TrackingService from its start to its close, null when another one has it: its compactions
+    // would start the journal again under this one
+    Closeable lockInstance() throws IOException {
+        Files.createDirectories(instanceFile.getParent());
+        FileChannel channel = FileChannel.open(instanceFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() != null) {
+                return channel;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by another service of this process
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return null;
+    }
+
+    // Exclusive lock on the data files between processes, released by close()
+    Closeable lock() throws IOException {
+        Files.createDirectories(lockFile.getParent());
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.lock();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    void ticketCreated(Ticket ticket) {
+        changed.add(ticket);
+        Record r = new Record(Op.TICKET_CREATED, ticket.getId());
+        r.setTime(stamp());
+        ticket.setUpdated(r.getTime());
+        r.setOrder(ticket.getOrder());
+        r.setDescription(ticket.getDescription());
+        r.setStatus(ticket.getStatus());
+        add(r);
+    }
+
+    void ticketUpdated(String previousId, Ticket ticket) {
+        // The durations accumulated so far were tracked under the previous id
+        drainDurations(ticket, previousId);
+        changed.add(ticket);
+        Record r = new Record(Op.TICKET_UPDATED, previousId);
+        r.setTime(stamp());
+        ticket.setUpdated(r.getTime());
+        if (!previousId.equals(ticket.getId())) {
+            r.setId(ticket.getId());
+        }
+        r.setOrder(ticket.getOrder());
+        r.setDescription(ticket.getDescription());
+        r.setStatus(ticket.getStatus());
+        add(r);
+    }
+
+    void ticketDeleted(String id) {
+        Record r = new Record(Op.TICKET_DELETED, id);
+        r.setTime(stamp());
+        add(r);
+    }
+
+    void todoCreated(Ticket ticket, TodoItem todo) {
+        changed.add(ticket);
+        Record r = new Record(Op.TODO_CREATED, ticket.getId());
+        r.setTime(stamp());
+        todo.setUpdated(r.getTime());
+        r.setDescription(todo.getDescription());
+        r.setStatus(todo.getStatus());
+        add(r);
+    }
+
+    void todoUpdated(Ticket ticket, int index, TodoItem todo, String previousDescription) {
+        changed.add(ticket);
+        Record r = new Record(Op.TODO_UPDATED, ticket.getId());
+        r.setTodo(index);
+        r.setTodoDescription(previousDescription);
+        r.setTime(stamp());
+        todo.setUpdated(r.getTime());
+        r.setDescription(todo.getDescription());
+        r.setStatus(todo.getStatus());
+        add(r);
+    }
+
+    void todoDeleted(Ticket ticket, int index) {
+        changed.add(ticket);
+        Record r = new Record(Op.TODO_DELETED, ticket.getId());
+        r.setTodo(index);
+        r.setTodoDescription(ticket.getTodoItems().get(index).getDescription());
+        r.setTime(stamp());
+        add(r);
+    }
+
+    void duration(Ticket ticket, TodoItem todo, int epochDay, long seconds) {
+        if (seconds == 0) {
+            return;
+        }
+        changed.add(ticket);
+        for (int i = 0; i < pendingDurations.size(); i++) {
+            PendingDuration p = pendingDurations.get(i);
+            if (p.ticket == ticket && p.todo == todo && p.day == epochDay) {
+                p.seconds += seconds;
+                return;
+            }
+        }
+        PendingDuration p = new PendingDuration(ticket, todo, epochDay);
+        p.seconds = seconds;
+        pendingDurations.add(p);
+    }
+
+    // Time added outside of the records, an import: only written by the next compaction
+    void imported(Ticket ticket) {
+        changed.add(ticket);
+    }
+
+    private void add(Record record) {
+        // Durations refer to tickets by id and to todos by index: write them before anything renames or shifts them
+        drainDurations(null, null);
+        pending.add(record);
+    }
+
+    private void drainDurations(Ticket renamed, String previousId) {
+        for (PendingDuration p : pendingDurations) {
+            Record r = new Record(Op.DURATION, p.ticket == renamed ? previousId : p.ticket.getId());
+            if (p.todo != null) {
+                int index = TicketIndex.identityIndexOf(p.ticket.getTodoItems(), p.todo);
+                if (index < 0) {
+                    continue;
+                }
+                r.setTodo(index);
+                r.setTodoDescription(p.todo.getDescription());
+            }
+            r.setDay(LocalDate.ofEpochDay(p.day).toString());
+            r.setSeconds(p.seconds);
+            pending.add(r);
+        }
+        pendingDurations.clear();
+    }
+
+    // Records to append since the previous call, cost only depends on what changed
+    List<Record> drain() {
+        drainDurations(null, null);
+        List<Record> records = new ArrayList<>(pending);
+        pending.clear();
+        return records;
+    }
+
+    // Tickets changed since the previous call, the other ones can be shared with the previous snapshot
+    Set<Ticket> takeChanged() {
+        Set<Ticket> result = changed;
+        changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        return result;
+    }
+
+    void append(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!Files.exists(file)) {
+            out.write(toLine(base(base)));
+        }
+        for (Record r : records) {
+            out.write(toLine(r));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            size = channel.size();
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    // Records appended by another process since this one last read or wrote the file. A journal started again
+    // on another snapshot isn't read from the previous offset, its records would be applied twice.
+    List<Record> readForeign() throws IOException {
+        if (!Files.exists(file)) {
+            return List.of();
+        }
+        byte[] content;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long end = channel.size();
+            Long header = headerBase(channel);
+            if (header == null || header != base) {
+                log.error("Journal {} started again on another snapshot by another process, its records are ignored.", file);
+                size = end;
+                return List.of();
+            }
+            if (end < size) {
+                log.warn("Journal {} got shorter, {} bytes expected and {} found.", file, size, end);
+                size = end;
+            }
+            if (end == size) {
+                return List.of();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - size));
+            while (buffer.hasRemaining() && channel.read(buffer, size + buffer.position()) >= 0) {
+                // read until the end
+            }
+            content = buffer.array();
+            size = end;
+        }
+        List<Record> records = new ArrayList<>();
+        for (String line : new String(content, StandardCharsets.UTF_8).split("\n")) {
+            Record r = line.isBlank() ? null : parse(line);
+            if (r != null && r.getOp() != Op.BASE) {
+                records.add(r);
+            }
+        }
+        return records;
+    }
+
+    // Apply records of another process on the tickets shown by the application
+    void applyForeign(List<Ticket> tickets, TicketIndex index, List<Record> records) {
+        for (Record r : records) {
+            if (!apply(tickets, index, r)) {
+                log.warn("Can't apply journal record {}.", r);
+                continue;
+            }
+            Ticket ticket = index.get(r.getId() != null ? r.getId() : r.getTicket());
+            if (ticket != null) {
+                changed.add(ticket);
+            }
+        }
+    }
+
+    // Apply records published by another device. Durations add up, whichever order they come in; a change
+    // of fields only wins if it is more recent than the last one here. Records which can't be applied, the
+    // durations of a ticket deleted here for instance, are skipped.
+    void applyRemote(List<Ticket> tickets, TicketIndex index, List<Record> records) {
+        for (Record r : records) {
+            if (!merge(tickets, index, r)) {
+                log.debug("Remote journal record skipped {}.", r);
+                continue;
+            }
+            Ticket ticket = index.get(r.getId() != null ? r.getId() : r.getTicket());
+            if (ticket != null) {
+                changed.add(ticket);
+            }
+        }
+    }
+
+    // Base of the first line, null if it isn't a complete base record
+    private Long headerBase(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(256, channel.size()));
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // read until the end of the header
+        }
+        String start = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        int newLine = start.indexOf('\n');
+        Record header = newLine < 0 ? null : parse(start.substring(0, newLine));
+        return header == null || header.getOp() != Op.BASE ? null : header.getBase();
+    }
+
+    // Start a new journal on top of the snapshot identified by the given crc
+    void reset(long base) throws IOException {
+        byte[] header = toLine(base(base));
+        PersistenceWorker.writeAtomically(file, header);
+        this.base = base;
+        size = header.length;
+    }
+
+    // Replay the journal on tickets loaded from the snapshot identified by the given crc
+    int replay(List<Ticket> tickets, long base) throws IOException {
+        this.base = base;
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        size = Files.size(file);
+        int count = 0;
+        boolean stale;
+        TicketIndex index = new TicketIndex();
+        index.reset(tickets);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            Record header = line == null ? null : parse(line);
+            stale = header == null || header.getOp() != Op.BASE || header.getBase() == null || header.getBase() != base;
+            while (!stale && (line = reader.readLine()) != null) {
+                Record r = parse(line);
+                if (r == null) {
+                    // Most probably the last line of a write interrupted by a crash
+                    continue;
+                }
+                if (apply(tickets, index, r)) {
+                    count++;
+                } else {
+                    log.warn("Can't replay journal record {}.", line);
+                }
+            }
+        }
+        if (stale) {
+            log.info("Journal {} doesn't apply on the current snapshot, ignored.", file);
+            reset(base);
+            return 0;
+        }
+        log.info("{} journal records replayed from {}.", count, file);
+        return count;
+    }
+
+    private static boolean apply(List<Ticket> tickets, TicketIndex index, Record r) {
+        if (r.getOp() == Op.TICKET_CREATED) {
+            if (index.contains(r.getTicket())) {
+                return false;
+            }
+            Ticket ticket = new Ticket(r.getOrder(), r.getTicket(), r.getDescription(), r.getStatus());
+            ticket.setUpdated(time(r));
+            tickets.add(ticket);
+            index.added(ticket);
+            return true;
+        }
+
+        Ticket ticket = index.get(r.getTicket());
+        if (ticket == null) {
+            return false;
+        }
+        List<TodoItem> todos = ticket.getTodoItems();
+        boolean validTodo = r.getTodo() != null && r.getTodo() >= 0 && r.getTodo() < todos.size();
+        switch (r.getOp()) {
+            case TICKET_UPDATED -> {
+                if (r.getId() != null) {
+                    ticket.setId(r.getId());
+                    index.renamed(r.getTicket(), ticket);
+                }
+                ticket.setOrder(r.getOrder());
+                ticket.setDescription(r.getDescription());
+                ticket.setStatus(r.getStatus());
+                ticket.setUpdated(time(r));
+            }
+            case TICKET_DELETED -> {
+                int row = index.rowOf(ticket);
+                tickets.remove(row);
+                index.removed(ticket, row);
+            }
+            case TODO_CREATED -> {
+                TodoItem todo = new TodoItem(r.getDescription(), r.getStatus());
+                todo.setUpdated(time(r));
+                todos.add(todo);
+            }
+            case TODO_UPDATED -> {
+                if (!validTodo) {
+                    return false;
+                }
+                todos.get(r.getTodo()).setDescription(r.getDescription());
+                todos.get(r.getTodo()).setStatus(r.getStatus());
+                todos.get(r.getTodo()).setUpdated(time(r));
+            }
+            case TODO_DELETED -> {
+                if (!validTodo) {
+                    return false;
+                }
+                todos.remove((int) r.getTodo());
+            }
+            case DURATION -> {
+                int day = (int) LocalDate.parse(r.getDay()).toEpochDay();
+                if (r.getTodo() == null) {
+                    ticket.incrementDuration(r.getSeconds());
+                    ticket.incrementDurationForDay(day, r.getSeconds());
+                } else if (validTodo) {
+                    todos.get(r.getTodo()).incrementDuration(r.getSeconds());
+                    todos.get(r.getTodo()).incrementDurationForDay(day, r.getSeconds());
+                } else {
+                    return false;
+                }
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean merge(List<Ticket> tickets, TicketIndex index, Record r) {
+        long time = time(r);
+        Ticket ticket = index.get(r.getTicket());
+        if (ticket == null) {
+            return r.getOp() == Op.TICKET_CREATED && apply(tickets, index, r);
+        }
+        switch (r.getOp()) {
+            case TICKET_CREATED -> {
+                // Created on both devices: same as an update
+                if (time > ticket.getUpdated()) {
+                    ticket.setOrder(r.getOrder());
+                    ticket.setDescription(r.getDescription());
+                    ticket.setStatus(r.getStatus());
+                    ticket.setUpdated(time);
+                }
+                return true;
+            }
+            case TICKET_UPDATED -> {
+                if (time <= ticket.getUpdated() || r.getId() != null && index.contains(r.getId())) {
+                    return false;
+                }
+            }
+            case TICKET_DELETED -> {
+                // Kept if it changed here after the deletion
+                if (time < ticket.getUpdated()) {
+                    return false;
+                }
+            }
+            case TODO_UPDATED, TODO_DELETED, DURATION -> {
+                if (r.getTodo() != null) {
+                    int todo = todoIndex(ticket, r);
+                    if (todo < 0 || r.getOp() == Op.TODO_UPDATED && time <= ticket.getTodoItems().get(todo).getUpdated()) {
+                        return false;
+                    }
+                    r.setTodo(todo);
+                }
+            }
+            default -> {
+            }
+        }
+        return apply(tickets, index, r);
+    }
+
+    // Index of the todo of the record, found by its description if the one at its index has another one
+    private static int todoIndex(Ticket ticket, Record r) {
+        List<TodoItem> todos = ticket.getTodoItems();
+        int i = r.getTodo();
+        String description = r.getTodoDescription();
+        if (i >= 0 && i < todos.size() && (description == null || description.equals(todos.get(i).getDescription()))) {
+            return i;
+        }
+        for (int j = 0; description != null && j < todos.size(); j++) {
+            if (description.equals(todos.get(j).getDescription())) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    // Records written before the time was added count as the oldest change
+    private static long time(Record r) {
+        return r.getTime() == null ? 0 : r.getTime();
+    }
+
+    private static long stamp() {
+        return System.currentTimeMillis();
+    }
+
+    private static Record base(long base) {
+        Record r = new Record();
+        r.setOp(Op.BASE);
+        r.setBase(base);
+        return r;
+    }
+
+    private byte[] toLine(Record r) throws JsonProcessingException {
+        return (mapper.writeValueAsString(r) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Record parse(String line) {
+        try {
+            return mapper.readValue(line, Record.class);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
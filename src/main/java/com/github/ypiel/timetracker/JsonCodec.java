@@ -0,0 +1,37 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// time-tracker.json read and written in one go with Jackson databind, everything parsed at load
+class JsonCodec implements StorageCodec {
+
+    static final String NAME = "json";
+
+    private static final TypeReference<ArrayList<Ticket>> TICKETS = new TypeReference<>() {
+    };
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean accepts(byte[] content) {
+        return StorageCodec.isJsonArray(content);
+    }
+
+    @Override
+    public List<Ticket> read(byte[] content) throws IOException {
+        return TicketJson.MAPPER.readValue(content, TICKETS);
+    }
+
+    @Override
+    public void write(List<Ticket> tickets, OutputStream out) throws IOException {
+        TicketJson.MAPPER.writeValue(out, tickets);
+    }
+}
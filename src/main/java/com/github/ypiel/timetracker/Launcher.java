@@ -0,0 +1,46 @@
+package com.github.ypiel.timetracker;
+
+import java.io.IOException;
+
+// Entry point of the jar: the Swing application without arguments, the tracking daemon with serve, the
+// command line otherwise. TimeTrackerApp is only referenced in its branch so that the others never load AWT.
+public class Launcher {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            TimeTrackerApp.main(args);
+            return;
+        }
+        if (args[0].equals("serve")) {
+            serve();
+            return;
+        }
+        // stdout is the output of the command, the logs go to stderr
+        System.setProperty("time-tracker.log.target", "SYSTEM_ERR");
+        System.setProperty("time-tracker.log.level", "WARN");
+        System.exit(new Cli(System.out, System.err).run(args));
+    }
+
+    // The service and its HTTP API without window, the HTTP dispatcher thread keeps the process alive
+    private static void serve() {
+        TrackingService service = new TrackingService();
+        try {
+            service.start();
+        } catch (IllegalStateException e) {
+            System.err.println("time-tracker: " + e.getMessage());
+            System.exit(1);
+        }
+        HttpApi api = new HttpApi(service);
+        try {
+            api.start();
+        } catch (IOException e) {
+            System.err.println("time-tracker: can't listen on port " + HttpApi.PORT + ": " + e);
+            service.close();
+            System.exit(1);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.stop();
+            service.close();
+        }, "time-tracker-shutdown"));
+    }
+}
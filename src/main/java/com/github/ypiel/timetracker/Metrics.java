@@ -0,0 +1,284 @@
+package com.github.ypiel.timetracker;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Latency of the clock ticks, the saves, the loads and the ticket table rebuilds, and the delay of the EDT queue.
+// Each one is a histogram exposed with the tickets and data sizes by the MBean com.github.ypiel.timetracker:type=Metrics
+// (TickCount, TickP50Micros, TickP99Micros, TickMaxMicros, ...), and all but the EDT delay are JFR events of the
+// "Time Tracker" category. Recording a value is a few atomic increments; the events cost nothing while no JFR
+// recording has them enabled, and the gauges are only computed when the MBean is read.
+// A tick or a save slower than time-tracker.metrics.tick-warn-ms/save-warn-ms is logged.
+@Slf4j
+final class Metrics implements DynamicMBean {
+
+    static final Latency TICK = new Latency("Tick", Long.getLong("time-tracker.metrics.tick-warn-ms", 250));
+    static final Latency SAVE = new Latency("Save", Long.getLong("time-tracker.metrics.save-warn-ms", 2000));
+    static final Latency LOAD = new Latency("Load", 0);
+    static final Latency TABLE_REBUILD = new Latency("TableRebuild", 0);
+    static final Latency EDT_DELAY = new Latency("EdtDelay", 0);
+
+    private static final List<Latency> LATENCIES = List.of(TICK, SAVE, LOAD, TABLE_REBUILD, EDT_DELAY);
+    private static final String[] STATS = {"Count", "P50Micros", "P99Micros", "MaxMicros"};
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    @Name("timetracker.Tick")
+    @Label("Tick")
+    @Category("Time Tracker")
+    static class TickEvent extends Event {
+        @Label("Running")
+        boolean running;
+    }
+
+    @Name("timetracker.Save")
+    @Label("Save")
+    @Category("Time Tracker")
+    static class SaveEvent extends Event {
+        @Label("Journal Records")
+        int records;
+        @Label("Compaction")
+        boolean compaction;
+    }
+
+    @Name("timetracker.Load")
+    @Label("Load")
+    @Category("Time Tracker")
+    static class LoadEvent extends Event {
+        @Label("Tickets")
+        int tickets;
+    }
+
+    @Name("timetracker.TableRebuild")
+    @Label("Ticket Table Rebuild")
+    @Category("Time Tracker")
+    static class TableRebuildEvent extends Event {
+        @Label("Rows")
+        int rows;
+    }
+
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+
+    private Metrics() {
+    }
+
+    // Register the MBean, its gauges read the service snapshot: they don't wait for the writers and don't parse
+    // anything, the todos still unparsed are counted in their raw JSON
+    static void register(TrackingService service) {
+        synchronized (INSTANCE) {
+            INSTANCE.gauges.put("Tickets", () -> service.snapshot().size());
+            INSTANCE.gauges.put("Todos", () -> {
+                long todos = 0;
+                for (Ticket ticket : service.snapshot()) {
+                    todos += ticket.todoCount();
+                }
+                return todos;
+            });
+            INSTANCE.gauges.put("DataFileBytes", Metrics::dataFileBytes);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName("com.github.ypiel.timetracker:type=Metrics"));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already there, the gauges have been updated
+        } catch (JMException e) {
+            log.warn("Can't register the metrics MBean.", e);
+        }
+    }
+
+    // The files read at startup: snapshot or catalog and shards, and the journal
+    private static long dataFileBytes() {
+        long size = 0;
+        for (Path path : List.of(DataFiles.SNAPSHOT, DataFiles.JOURNAL, DataFiles.STATE.resolve(ShardedStore.CATALOG))) {
+            try {
+                size += Files.size(path);
+            } catch (IOException e) {
+                // Not there
+            }
+        }
+        try (Stream<Path> shards = Files.list(DataFiles.STATE.resolve("shards"))) {
+            for (Path path : (Iterable<Path>) shards::iterator) {
+                size += Files.size(path);
+            }
+        } catch (IOException e) {
+            // Not there
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized Object getAttribute(String attribute) throws AttributeNotFoundException {
+        LongSupplier gauge = gauges.get(attribute);
+        if (gauge != null) {
+            return gauge.getAsLong();
+        }
+        for (Latency latency : LATENCIES) {
+            if (attribute.startsWith(latency.name)) {
+                switch (attribute.substring(latency.name.length())) {
+                    case "Count" -> {
+                        return latency.count();
+                    }
+                    case "P50Micros" -> {
+                        return latency.percentile(0.50) / 1000;
+                    }
+                    case "P99Micros" -> {
+                        return latency.percentile(0.99) / 1000;
+                    }
+                    case "MaxMicros" -> {
+                        return latency.max() / 1000;
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Left out, as the interface says
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Read only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public synchronized MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Latency latency : LATENCIES) {
+            for (String stat : STATS) {
+                attributes.add(new MBeanAttributeInfo(latency.name + stat, "long", latency.name + " " + stat, true, false, false));
+            }
+        }
+        for (String gauge : gauges.keySet()) {
+            attributes.add(new MBeanAttributeInfo(gauge, "long", gauge, true, false, false));
+        }
+        return new MBeanInfo(Metrics.class.getName(), "time-tracker latencies and sizes",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+
+    // Histogram of durations in nanoseconds, without lock: 8 buckets per power of two, so a percentile is
+    // at most 12.5% above the real value
+    static final class Latency {
+
+        private static final int SUB = 8;
+
+        private final String name;
+        private final long warnNanos;
+        private final AtomicLongArray buckets = new AtomicLongArray(SUB + 60 * SUB);
+        private final AtomicLong max = new AtomicLong();
+
+        private Latency(String name, long warnMillis) {
+            this.name = name;
+            this.warnNanos = warnMillis * 1_000_000;
+        }
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                return;
+            }
+            buckets.incrementAndGet(bucket(nanos));
+            max.accumulateAndGet(nanos, Math::max);
+            if (warnNanos > 0 && nanos > warnNanos) {
+                log.warn("{} took {} ms.", name, nanos / 1_000_000);
+            }
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        // Upper bound of the bucket holding the given fraction of the values, 0 if there are none
+        long percentile(double fraction) {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            long rank = (long) Math.ceil(fraction * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0) {
+                    return Math.min(upperBound(i), max());
+                }
+            }
+            return 0;
+        }
+
+        private static int bucket(long nanos) {
+            if (nanos < SUB) {
+                return (int) nanos;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exponent - 3)) - SUB;
+            return SUB + (exponent - 3) * SUB + sub;
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < SUB) {
+                return bucket;
+            }
+            int exponent = (bucket - SUB) / SUB + 3;
+            int sub = (bucket - SUB) % SUB;
+            return ((long) (SUB + sub + 1) << (exponent - 3)) - 1;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.github.ypiel.timetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Writes the journal and the snapshots on a background thread, the TrackingService only hands over records
+// and copies of the tickets. A snapshot is the catalog and the changed month shards of the ShardedStore, or
+// time-tracker.json with time-tracker.storage=snapshot.
+// Requests are executed in order; when several are waiting, the appends queued before a compaction
+// are dropped (the snapshot already contains them) and only the latest compaction is written.
+// The command line may append to the journal at the same time: the files are only touched under the journal
+// lock, and the records appended by another process are read back and handed to the listener. Until a snapshot
+// built after they were applied is written, they are appended again on top of each new snapshot.
+// With time-tracker.device, the records of this process are also published to the other devices (the command
+// line publishes its own ones), and the ones they published are read back and handed to the listener (see DeviceSync).
+// The status transitions go to the StatusLog after the journal, a compaction never drops them.
+// What was archived or reopened since the previous request is written to the ColdArchive first: a snapshot
+// without the archived tickets is never written before them.
+@Slf4j
+class PersistenceWorker {
+
+    private record Append(List<Journal.Record> records) {
+    }
+
+    private record Compaction(List<Ticket> tickets, long appliedForeign, Map<String, Long> synced) {
+    }
+
+    private record StatusChanges(List<StatusLog.Change> changes) {
+    }
+
+    private record Foreign(long seq, List<Journal.Record> records) {
+    }
+
+    interface ForeignListener {
+        // Called from the persistence thread, the records are numbered by seq
+        void foreign(long seq, List<Journal.Record> records);
+    }
+
+    interface RemoteListener {
+        // Called from the persistence thread with what the other devices published since the previous call
+        void remote(List<DeviceSync.Batch> batches);
+    }
+
+    private final Path saveDir;
+    private final Path saveFile;
+    private final ShardedStore store;
+    private final ColdArchive archive;
+    private final Journal journal;
+    private final BackupStore backups;
+    private final StatusLog statusLog;
+    private final ForeignListener foreignListener;
+    private final RemoteListener remoteListener;
+    // null without time-tracker.device
+    private final DeviceSync sync;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "time-tracker-persistence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by queue
+    private final List<Object> queue = new ArrayList<>();
+    private boolean scheduled = false;
+
+    // Records of other processes not in a snapshot yet, only used by the persistence thread
+    private final List<Foreign> unsaved = new ArrayList<>();
+    private long foreignSeq = 0;
+    // Last seq applied to the tickets
+    private volatile long appliedForeign = 0;
+
+    PersistenceWorker(Path saveDir, Path saveFile, ShardedStore store, ColdArchive archive, Journal journal,
+                      ForeignListener foreignListener, RemoteListener remoteListener) {
+        this.saveDir = saveDir;
+        this.saveFile = saveFile;
+        this.store = store;
+        this.archive = archive;
+        this.journal = journal;
+        this.foreignListener = foreignListener;
+        this.remoteListener = remoteListener;
+        this.sync = DataFiles.DEVICE == null ? null : new DeviceSync(DataFiles.DEVICES, DataFiles.DEVICE);
+        this.backups = new BackupStore(saveDir.resolve("backups"));
+        this.statusLog = new StatusLog(saveDir);
+    }
+
+    BackupStore backups() {
+        return backups;
+    }
+
+    // Also submitted without records, to pick up what other processes appended
+    void append(List<Journal.Record> records) {
+        submit(new Append(records));
+    }
+
+    void statusChanged(List<StatusLog.Change> changes) {
+        submit(new StatusChanges(changes));
+    }
+
+    void foreignApplied(long seq) {
+        appliedForeign = seq;
+    }
+
+    // The tickets are a TrackingService snapshot, nobody modifies them, synced the change logs merged in them
+    void compact(List<Ticket> snapshot, Map<String, Long> synced) {
+        submit(new Compaction(snapshot, appliedForeign, synced));
+    }
+
+    // Wait for the pending requests, only used when the application is closed
+    void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Time-tracker data still not saved after 30s.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(Object request) {
+        synchronized (queue) {
+            queue.add(request);
+            if (!scheduled) {
+                scheduled = true;
+                executor.execute(this::run);
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<Object> batch;
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    scheduled = false;
+                    return;
+                }
+                batch = new ArrayList<>(queue);
+                queue.clear();
+            }
+            process(batch);
+        }
+    }
+
+    private void process(List<Object> batch) {
+        Compaction compaction = null;
+        List<Journal.Record> records = new ArrayList<>();
+        // The records in the snapshot are still to be published
+        List<Journal.Record> published = new ArrayList<>();
+        List<StatusLog.Change> statusChanges = new ArrayList<>();
+        for (Object request : batch) {
+            if (request instanceof Compaction c) {
+                compaction = c;
+                records.clear();
+            } else if (request instanceof StatusChanges c) {
+                statusChanges.addAll(c.changes());
+            } else {
+                records.addAll(((Append) request).records());
+                published.addAll(((Append) request).records());
+            }
+        }
+        Metrics.SaveEvent event = new Metrics.SaveEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(saveDir);
+            Closeable lock = journal.lock();
+            try {
+                archive.flush();
+                List<Journal.Record> foreign = journal.readForeign();
+                if (!foreign.isEmpty()) {
+                    log.info("{} journal records appended by another process.", foreign.size());
+                    unsaved.add(new Foreign(++foreignSeq, foreign));
+                    foreignListener.foreign(foreignSeq, foreign);
+                }
+                if (sync != null) {
+                    sync(published);
+                }
+                if (compaction != null) {
+                    writeSnapshot(compaction.tickets(), compaction.synced());
+                    long applied = compaction.appliedForeign();
+                    unsaved.removeIf(f -> f.seq() <= applied);
+                    for (Foreign f : unsaved) {
+                        journal.append(f.records());
+                    }
+                }
+                journal.append(records);
+                statusLog.append(statusChanges);
+            } finally {
+                lock.close();
+            }
+        } catch (IOException e) {
+            log.error("Can't save time-tracker data.", e);
+        }
+        Metrics.SAVE.record(System.nanoTime() - start);
+        event.records = records.size();
+        event.compaction = compaction != null;
+        event.commit();
+    }
+
+    // Publish first: a record in the journal but not in the log would never reach the other devices
+    private void sync(List<Journal.Record> published) throws IOException {
+        sync.publish(published);
+        if (!sync.started()) {
+            sync.start(store.synced());
+        }
+        List<DeviceSync.Batch> remote = sync.poll();
+        if (!remote.isEmpty()) {
+            log.info("{} change logs of other devices to merge.", remote.size());
+            remoteListener.remote(remote);
+        }
+    }
+
+    private void writeSnapshot(List<Ticket> tickets, Map<String, Long> synced) throws IOException {
+        if (DataFiles.SHARDED) {
+            writeShards(tickets, synced);
+            return;
+        }
+        log.info("Save time-tracker data to {}.", saveFile);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StorageCodec.configured().write(tickets, out);
+        byte[] content = out.toByteArray();
+        writeAtomically(saveFile, content);
+        journal.reset(crc(content));
+        store.delete();
+        try {
+            backups.backup(content, LocalDate.now());
+        } catch (IOException e) {
+            log.error("Can't back up time-tracker data.", e);
+        }
+    }
+
+    // Only the catalog and the months which changed are written, time-tracker.json is put aside once migrated
+    private void writeShards(List<Ticket> tickets, Map<String, Long> synced) throws IOException {
+        journal.reset(store.write(tickets, synced));
+        if (Files.exists(saveFile)) {
+            Path migrated = saveFile.resolveSibling(saveFile.getFileName() + ".migrated");
+            log.info("time-tracker data migrated to the sharded storage, {} moved to {}.", saveFile, migrated);
+            Files.move(saveFile, migrated, StandardCopyOption.REPLACE_EXISTING);
+        }
+        try {
+            backups.backup(store, LocalDate.now());
+        } catch (IOException e) {
+            log.error("Can't back up time-tracker data.", e);
+        }
+    }
+
+    static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    // Write to a temporary file, fsync it and rename it in place: readers see the old or the new content, never a mix
+    static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
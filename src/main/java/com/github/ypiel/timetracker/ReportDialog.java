@@ -0,0 +1,185 @@
+package com.github.ypiel.timetracker;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Report of the time spent between two days, grouped by ticket, todo, status, day, week or month, exported as CSV
+@Slf4j
+class ReportDialog extends JDialog {
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<Ticket> tickets;
+    private final transient ColdArchive archive;
+    private transient ReportEngine engine;
+
+    private final JTextField from = new JTextField(10);
+    private final JTextField to = new JTextField(10);
+    private final JComboBox<ReportEngine.GroupBy> groupBy = new JComboBox<>(ReportEngine.GroupBy.values());
+    private final JCheckBox withArchive = new JCheckBox("Include archive");
+    private final JLabel total = new JLabel();
+    private final RowsModel model = new RowsModel();
+
+    // Reports on a snapshot: the tickets keep being credited by the service while the dialog is open
+    ReportDialog(JFrame owner, TrackingService service) {
+        super(owner, "Report", true);
+        this.tickets = service.snapshot();
+        this.archive = service.archive();
+        engine = new ReportEngine(tickets);
+        setLayout(new BorderLayout());
+
+        LocalDate today = LocalDate.now();
+        from.setText(today.with(DayOfWeek.MONDAY).toString());
+        to.setText(today.toString());
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("From"));
+        top.add(from);
+        top.add(new JLabel("To"));
+        top.add(to);
+        top.add(groupBy);
+        top.add(withArchive);
+        addRange(top, "Week", today.with(DayOfWeek.MONDAY), today);
+        addRange(top, "Month", today.withDayOfMonth(1), today);
+        addRange(top, "Year", today.withDayOfYear(1), today);
+
+        JTable table = new JTable(model);
+        table.getColumnModel().getColumn(2).setCellRenderer(new DurationRenderer());
+        table.setAutoCreateRowSorter(true);
+
+        JButton export = new JButton("Export CSV...");
+        export.addActionListener(e -> export());
+        JPanel bottom = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        bottom.add(total);
+        bottom.add(export);
+
+        from.addActionListener(e -> refresh());
+        to.addActionListener(e -> refresh());
+        groupBy.addActionListener(e -> refresh());
+        withArchive.addActionListener(e -> {
+            engine = new ReportEngine(withArchive.isSelected() ? withArchive() : tickets);
+            refresh();
+        });
+
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+        setSize(900, 500);
+        setLocationRelativeTo(owner);
+        refresh();
+    }
+
+    private void addRange(JPanel panel, String label, LocalDate start, LocalDate end) {
+        JButton button = new JButton(label);
+        button.addActionListener(e -> {
+            from.setText(start.toString());
+            to.setText(end.toString());
+            refresh();
+        });
+        panel.add(button);
+    }
+
+    private List<Ticket> withArchive() {
+        List<Ticket> all = new ArrayList<>(tickets);
+        Set<String> active = new HashSet<>();
+        for (Ticket ticket : tickets) {
+            active.add(ticket.getId());
+        }
+        try {
+            for (int year : archive.years()) {
+                for (Ticket ticket : archive.read(year)) {
+                    // A reopened ticket is counted once
+                    if (!active.contains(ticket.getId())) {
+                        all.add(ticket);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Can't read the archive.", e);
+            JOptionPane.showMessageDialog(this, "Can't read the archive: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        return all;
+    }
+
+    private void refresh() {
+        LocalDate start;
+        LocalDate end;
+        try {
+            start = LocalDate.parse(from.getText().trim());
+            end = LocalDate.parse(to.getText().trim());
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Dates must be like 2024-10-17.", "Warning", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        model.setRows(engine.report((ReportEngine.GroupBy) groupBy.getSelectedItem(), start, end));
+        total.setText("Total " + DurationFormat.format(engine.total(start, end)));
+    }
+
+    private void export() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new java.io.File("report-" + from.getText().trim() + "-" + to.getText().trim() + ".csv"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try (Writer writer = Files.newBufferedWriter(chooser.getSelectedFile().toPath(), StandardCharsets.UTF_8)) {
+            ReportEngine.writeCsv(model.rows, writer);
+        } catch (IOException e) {
+            log.error("Can't export the report.", e);
+            JOptionPane.showMessageDialog(this, "Can't export the report: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private static class RowsModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final String[] COLUMNS = {"Key", "Description", "Duration"};
+        private transient List<ReportEngine.Row> rows = List.of();
+
+        void setRows(List<ReportEngine.Row> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 2 ? Long.class : String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ReportEngine.Row r = rows.get(row);
+            return switch (column) {
+                case 0 -> r.key();
+                case 1 -> r.description();
+                default -> r.seconds();
+            };
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.github.ypiel.timetracker;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+// Time reports over a list of tickets, seen as a day x ticket matrix stored by ticket: each ticket column is
+// its DailyDurations (sorted days with running sums), and the totals of all tickets per day are computed for
+// the range asked with their running sums. The time of a ticket on a range of days costs two binary searches,
+// the time of all tickets on a range two array reads, whatever the length of the history. The days are read
+// through durationsBetween(): the month shards outside of the range aren't read.
+class ReportEngine {
+
+    enum GroupBy {
+        TICKET, TODO, STATUS, DAY, WEEK, MONTH
+    }
+
+    record Row(String key, String description, long seconds) {
+    }
+
+    private final List<Ticket> tickets;
+    // Range of the totals, the last one asked: report() then total() on the same days compute them once
+    private int rangeFirst;
+    private int rangeLast;
+    private int firstDay;
+    // totals[i + 1] - totals[i] = seconds of all the tickets on firstDay + i, null until a range is asked
+    private long[] totals;
+
+    ReportEngine(List<Ticket> tickets) {
+        this.tickets = List.copyOf(tickets);
+    }
+
+    // Totals of the days of the range with some time
+    private void totals(int from, int to) {
+        if (totals != null && from == rangeFirst && to == rangeLast) {
+            return;
+        }
+        rangeFirst = from;
+        rangeLast = to;
+        List<DailyDurations> columns = new ArrayList<>(tickets.size());
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (Ticket ticket : tickets) {
+            DailyDurations durations = ticket.durationsBetween(from, to);
+            int lo = durations.lowerBound(from);
+            int hi = (to == Integer.MAX_VALUE ? durations.size() : durations.lowerBound(to + 1)) - 1;
+            if (lo <= hi) {
+                first = Math.min(first, durations.dayAt(lo));
+                last = Math.max(last, durations.dayAt(hi));
+                columns.add(durations);
+            }
+        }
+        if (first > last) {
+            firstDay = 0;
+            totals = new long[1];
+            return;
+        }
+        firstDay = first;
+        totals = new long[last - first + 2];
+        for (DailyDurations durations : columns) {
+            for (int i = durations.lowerBound(first); i < durations.size() && durations.dayAt(i) <= last; i++) {
+                totals[durations.dayAt(i) - first + 1] += durations.secondsAt(i);
+            }
+        }
+        for (int i = 1; i < totals.length; i++) {
+            totals[i] += totals[i - 1];
+        }
+    }
+
+    // Seconds of all the tickets from the first to the last day, both included
+    long total(LocalDate from, LocalDate to) {
+        return total((int) Math.max(Integer.MIN_VALUE, from.toEpochDay()), (int) Math.min(Integer.MAX_VALUE, to.toEpochDay()));
+    }
+
+    private long total(int from, int to) {
+        totals(from, to);
+        return sum(from, to);
+    }
+
+    // Rows with some time between the two days, both included, LocalDate.MIN/MAX for no bound. Tickets, todos and
+    // status come by decreasing time, days, weeks and months in date order.
+    List<Row> report(GroupBy groupBy, LocalDate from, LocalDate to) {
+        int first = (int) Math.max(Integer.MIN_VALUE, from.toEpochDay());
+        int last = (int) Math.min(Integer.MAX_VALUE, to.toEpochDay());
+        List<Row> rows = new ArrayList<>();
+        switch (groupBy) {
+            case TICKET -> {
+                for (Ticket ticket : tickets) {
+                    add(rows, ticket.getId(), ticket.getDescription(), ticket.durationsBetween(first, last).sum(first, last));
+                }
+                rows.sort(Comparator.comparingLong(Row::seconds).reversed());
+            }
+            case TODO -> {
+                for (Ticket ticket : tickets) {
+                    for (TodoItem todo : ticket.getTodoItems()) {
+                        add(rows, ticket.getId(), todo.getDescription(), todo.durationsBetween(first, last).sum(first, last));
+                    }
+                }
+                rows.sort(Comparator.comparingLong(Row::seconds).reversed());
+            }
+            case STATUS -> {
+                Map<Status, Long> perStatus = new EnumMap<>(Status.class);
+                long none = 0;
+                for (Ticket ticket : tickets) {
+                    long seconds = ticket.durationsBetween(first, last).sum(first, last);
+                    if (ticket.getStatus() == null) {
+                        none += seconds;
+                    } else {
+                        perStatus.merge(ticket.getStatus(), seconds, Long::sum);
+                    }
+                }
+                perStatus.forEach((status, seconds) -> add(rows, status.name(), "", seconds));
+                add(rows, "", "", none);
+                rows.sort(Comparator.comparingLong(Row::seconds).reversed());
+            }
+            case DAY, WEEK, MONTH -> {
+                // The periods without time aren't shown, only the ones of the days with some are gone through
+                totals(first, last);
+                if (totals.length == 1) {
+                    break;
+                }
+                LocalDate start = from;
+                LocalDate firstPeriod = periodStart(groupBy, LocalDate.ofEpochDay(firstDay));
+                if (start.isBefore(firstPeriod)) {
+                    start = firstPeriod;
+                }
+                LocalDate lastDay = LocalDate.ofEpochDay(firstDay + totals.length - 2);
+                while (!start.isAfter(to) && !start.isAfter(lastDay)) {
+                    LocalDate end = switch (groupBy) {
+                        case WEEK -> start.with(DayOfWeek.SUNDAY);
+                        case MONTH -> YearMonth.from(start).atEndOfMonth();
+                        default -> start;
+                    };
+                    if (end.isAfter(to)) {
+                        end = to;
+                    }
+                    String key = switch (groupBy) {
+                        case WEEK -> {
+                            int week = start.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+                            yield start.get(IsoFields.WEEK_BASED_YEAR) + (week < 10 ? "-W0" : "-W") + week;
+                        }
+                        case MONTH -> YearMonth.from(start).toString();
+                        default -> start.toString();
+                    };
+                    add(rows, key, groupBy == GroupBy.DAY ? "" : start + " - " + end, sum((int) start.toEpochDay(), (int) end.toEpochDay()));
+                    start = end.plusDays(1);
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Seconds of the days of the computed range between the two days
+    private long sum(int from, int to) {
+        int lo = Math.max(from, firstDay) - firstDay;
+        int hi = Math.min(to, firstDay + totals.length - 2) - firstDay;
+        return lo > hi ? 0 : totals[hi + 1] - totals[lo];
+    }
+
+    private static LocalDate periodStart(GroupBy groupBy, LocalDate day) {
+        return switch (groupBy) {
+            case WEEK -> day.with(DayOfWeek.MONDAY);
+            case MONTH -> day.withDayOfMonth(1);
+            default -> day;
+        };
+    }
+
+    private static void add(List<Row> rows, String key, String description, long seconds) {
+        if (seconds != 0) {
+            rows.add(new Row(key, description, seconds));
+        }
+    }
+
+    static void writeCsv(List<Row> rows, Writer writer) throws IOException {
+        writer.write("key,description,seconds,duration\n");
+        for (Row row : rows) {
+            writer.write(csv(row.key()));
+            writer.write(',');
+            writer.write(csv(row.description()));
+            writer.write(',');
+            writer.write(Long.toString(row.seconds()));
+            writer.write(',');
+            writer.write(DurationFormat.format(row.seconds()));
+            writer.write('\n');
+        }
+    }
+
+    static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
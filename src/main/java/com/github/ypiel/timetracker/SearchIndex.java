@@ -0,0 +1,179 @@
+package com.github.ypiel.timetracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Inverted index of the words of the ticket ids, ticket descriptions and todo descriptions, for the search field.
+// Words are the runs of letters and digits, lower cased: https://jira/browse/ABC-123 is found with "abc-12" or
+// "browse". Each word of a query is a prefix, a ticket matches when every one of them starts one of its words.
+// Words are kept sorted, so the words of a prefix are a range of the map.
+// The index follows the service notifications ticket by ticket, with the service lock held; the first build
+// and the queries run on the search thread.
+@Slf4j
+class SearchIndex implements TrackingService.Listener {
+
+    private final TrackingService service;
+    // Guarded by this
+    private final NavigableMap<String, Set<Ticket>> postings = new TreeMap<>();
+    private final Map<Ticket, Set<String>> words = new IdentityHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "time-tracker-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    SearchIndex(TrackingService service) {
+        this.service = service;
+    }
+
+    // Follow the changes, the tickets already there are indexed in the background
+    void start() {
+        service.addListener(this);
+        executor.execute(this::rebuild);
+    }
+
+    // The tickets matching the query are given to the consumer on the search thread, null when the query has
+    // no word and nothing has to be filtered
+    void search(String query, Consumer<Set<Ticket>> result) {
+        executor.execute(() -> result.accept(query(query)));
+    }
+
+    synchronized Set<Ticket> query(String query) {
+        Set<String> terms = words(query, new LinkedHashSet<>());
+        if (terms.isEmpty()) {
+            return null;
+        }
+        Set<Ticket> result = null;
+        for (String term : terms) {
+            Set<Ticket> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Set<Ticket> tickets : postings.subMap(term, true, term + Character.MAX_VALUE, false).values()) {
+                matches.addAll(tickets);
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void ticketAdded(Ticket ticket) {
+        update(ticket);
+    }
+
+    @Override
+    public void ticketRemoved(Ticket ticket) {
+        remove(ticket);
+    }
+
+    @Override
+    public void ticketChanged(Ticket ticket) {
+        update(ticket);
+    }
+
+    @Override
+    public void ticketsReloaded() {
+        executor.execute(this::rebuild);
+    }
+
+    // One ticket at a time under the service lock, so that the notifications keep being applied in order
+    private void rebuild() {
+        long start = System.nanoTime();
+        service.read(() -> {
+            for (Ticket ticket : indexed()) {
+                if (!service.contains(ticket)) {
+                    remove(ticket);
+                }
+            }
+            return null;
+        });
+        List<Ticket> tickets = service.tickets();
+        for (Ticket ticket : tickets) {
+            service.read(() -> {
+                if (service.contains(ticket)) {
+                    update(ticket);
+                }
+                return null;
+            });
+        }
+        log.info("{} tickets indexed in {} ms.", tickets.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private synchronized List<Ticket> indexed() {
+        return new ArrayList<>(words.keySet());
+    }
+
+    // Only the words which appeared or disappeared touch the postings
+    private synchronized void update(Ticket ticket) {
+        Set<String> next = words(ticket.getId(), new LinkedHashSet<>());
+        words(ticket.getDescription(), next);
+        // The todos still unparsed stay so, their descriptions are read from the raw JSON
+        for (String description : ticket.todoDescriptions()) {
+            words(description, next);
+        }
+        Set<String> previous = words.put(ticket, next);
+        if (previous != null) {
+            for (String word : previous) {
+                if (!next.contains(word)) {
+                    removePosting(word, ticket);
+                }
+            }
+        }
+        for (String word : next) {
+            if (previous == null || !previous.contains(word)) {
+                postings.computeIfAbsent(word, w -> Collections.newSetFromMap(new IdentityHashMap<>())).add(ticket);
+            }
+        }
+    }
+
+    private synchronized void remove(Ticket ticket) {
+        Set<String> previous = words.remove(ticket);
+        if (previous != null) {
+            for (String word : previous) {
+                removePosting(word, ticket);
+            }
+        }
+    }
+
+    private void removePosting(String word, Ticket ticket) {
+        Set<Ticket> tickets = postings.get(word);
+        if (tickets != null && tickets.remove(ticket) && tickets.isEmpty()) {
+            postings.remove(word);
+        }
+    }
+
+    static Set<String> words(String text, Set<String> into) {
+        if (text == null) {
+            return into;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                into.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return into;
+    }
+}
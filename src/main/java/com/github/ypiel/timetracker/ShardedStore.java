@@ -0,0 +1,530 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Tickets stored as a small catalog plus one file per month with the seconds of the days of that month.
+// catalog.json has the ticket fields, the todos and the months in which each ticket has some time;
+// shards/<yyyy-MM>.<generation>.json has the days of the month of every ticket and todo, keyed by ticket id
+// and todo index. A compaction writes a new file only for the months whose days changed since the previous
+// one, then the catalog naming the file of each month: renaming the catalog in place is the commit.
+// Files the catalog doesn't name any more are deleted one compaction later, the command line may still be
+// reading them. The days of the loaded tickets stay in the shards until they are first accessed, see History;
+// the reports only read the shards of the months they cover.
+// For a device, the catalog also has how far the change logs of the other devices have been merged, see DeviceSync.
+@Slf4j
+class ShardedStore {
+
+    static final String CATALOG = "catalog.json";
+    private static final String SHARDS = "shards";
+
+    private static final TypeReference<LinkedHashMap<String, ShardEntry>> SHARD = new TypeReference<>() {
+    };
+
+    record CatalogTodo(Status status, String description, long duration,
+                       @JsonInclude(JsonInclude.Include.NON_DEFAULT) long updated) {
+    }
+
+    // lastDay is the last day of the ticket itself, null if it has none
+    record CatalogTicket(int order, String id, String description, Status status, long duration,
+                         List<String> months, String lastDay, List<CatalogTodo> todoItems,
+                         @JsonInclude(JsonInclude.Include.NON_DEFAULT) long updated) {
+    }
+
+    // shards: yyyy-MM -> generation of its file, synced: change log of another device -> offset merged
+    record Catalog(long generation, Map<String, Long> shards, List<CatalogTicket> tickets,
+                   @JsonInclude(JsonInclude.Include.NON_EMPTY) Map<String, Long> synced) {
+    }
+
+    // Days of a ticket and of its todos in one month, todos keyed by index
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record ShardEntry(DailyDurations durationsPerDay, Map<Integer, DailyDurations> todos) {
+    }
+
+    private final Path catalogFile;
+    private final Path shardDir;
+
+    // Guarded by this: the catalog as last read or written, and the shards already parsed
+    private long generation = 0;
+    private Map<String, Long> shards = new TreeMap<>();
+    private long crc = 0;
+    private Map<String, Long> synced = Map.of();
+    private final Map<String, SoftReference<Map<String, ShardEntry>>> cache = new HashMap<>();
+    private List<String> retired = new ArrayList<>();
+
+    // Only used by the persistence thread after read(): the tickets of the catalog, to find what changed
+    private Map<String, Ticket> written = new HashMap<>();
+    private Map<Ticket, CatalogTicket> entries = new IdentityHashMap<>();
+    private boolean cleaned = false;
+
+    ShardedStore(Path dir) {
+        this.catalogFile = dir.resolve(CATALOG);
+        this.shardDir = dir.resolve(SHARDS);
+    }
+
+    boolean exists() {
+        return Files.exists(catalogFile);
+    }
+
+    // crc of the catalog last read or written, the base of the journal
+    synchronized long crc() {
+        return crc;
+    }
+
+    // Change logs of the other devices merged in the catalog last read or written
+    synchronized Map<String, Long> synced() {
+        return synced;
+    }
+
+    // Tickets of the catalog, only the catalog is read: the days are read from the shards when first accessed
+    List<Ticket> read() throws IOException {
+        byte[] content = Files.readAllBytes(catalogFile);
+        Catalog catalog = TicketJson.MAPPER.readValue(content, Catalog.class);
+        synchronized (this) {
+            generation = catalog.generation();
+            shards = new TreeMap<>(catalog.shards());
+            crc = PersistenceWorker.crc(content);
+            synced = catalog.synced() == null ? Map.of() : Map.copyOf(catalog.synced());
+        }
+        List<Ticket> tickets = new ArrayList<>(catalog.tickets().size());
+        written = new HashMap<>();
+        entries = new IdentityHashMap<>();
+        for (CatalogTicket entry : catalog.tickets()) {
+            Ticket ticket = new Ticket(entry.order(), entry.id(), entry.description(), entry.status());
+            ticket.setDuration(entry.duration());
+            ticket.setUpdated(entry.updated());
+            History history = entry.months().isEmpty() ? null : new History(this, entry);
+            ticket.setHistory(history);
+            List<CatalogTodo> todos = entry.todoItems();
+            for (int i = 0; i < todos.size(); i++) {
+                TodoItem todo = new TodoItem(todos.get(i).description(), todos.get(i).status());
+                todo.setDuration(todos.get(i).duration());
+                todo.setUpdated(todos.get(i).updated());
+                todo.setHistory(history, i);
+                ticket.getTodoItems().add(todo);
+            }
+            tickets.add(ticket);
+            // The state of the files, shares the history with the ticket
+            Ticket copy = ticket.copy();
+            written.put(entry.id(), copy);
+            entries.put(copy, entry);
+        }
+        log.info("{} tickets read from {}, {} month shards.", tickets.size(), catalogFile, catalog.shards().size());
+        return tickets;
+    }
+
+    long write(List<Ticket> tickets) throws IOException {
+        return write(tickets, synced());
+    }
+
+    // Called by the persistence thread with a TrackingService snapshot, returns the crc of the new catalog.
+    // Tickets whose copy is the one of the previous write are skipped, the others are compared to it to find
+    // the months to write again.
+    long write(List<Ticket> tickets, Map<String, Long> merged) throws IOException {
+        Map<YearMonth, Set<String>> dirty = new TreeMap<>();
+        Map<Ticket, CatalogTicket> nextEntries = new IdentityHashMap<>(tickets.size());
+        Map<String, Ticket> nextWritten = new HashMap<>(tickets.size());
+        List<CatalogTicket> catalogTickets = new ArrayList<>(tickets.size());
+        boolean changed = !exists() || !merged.equals(synced());
+        for (Ticket ticket : tickets) {
+            Ticket previous = written.get(ticket.getId());
+            CatalogTicket entry = previous == ticket ? entries.get(ticket) : null;
+            if (entry == null) {
+                Set<YearMonth> months = changedMonths(previous, ticket);
+                for (YearMonth month : months) {
+                    dirty.computeIfAbsent(month, m -> new HashSet<>()).add(ticket.getId());
+                }
+                entry = entry(ticket);
+                changed |= !months.isEmpty() || previous == null || !entry.equals(entries.get(previous));
+            }
+            nextEntries.put(ticket, entry);
+            nextWritten.put(ticket.getId(), ticket);
+            catalogTickets.add(entry);
+        }
+        for (Ticket previous : written.values()) {
+            if (!nextWritten.containsKey(previous.getId())) {
+                changed = true;
+                for (YearMonth month : months(previous)) {
+                    dirty.computeIfAbsent(month, m -> new HashSet<>());
+                }
+            }
+        }
+        if (!changed) {
+            return crc();
+        }
+
+        Map<String, Long> nextShards;
+        long next;
+        synchronized (this) {
+            nextShards = new TreeMap<>(shards);
+            next = generation + 1;
+        }
+        Map<String, Map<String, ShardEntry>> parsed = new HashMap<>();
+        List<String> replaced = new ArrayList<>();
+        Files.createDirectories(shardDir);
+        for (Map.Entry<YearMonth, Set<String>> e : dirty.entrySet()) {
+            YearMonth month = e.getKey();
+            int first = (int) month.atDay(1).toEpochDay();
+            int last = (int) month.atEndOfMonth().toEpochDay();
+            Map<String, ShardEntry> previous = shard(month);
+            Map<String, ShardEntry> shard = new LinkedHashMap<>();
+            for (Ticket ticket : tickets) {
+                ShardEntry entry = e.getValue().contains(ticket.getId()) ? entry(ticket, first, last) : previous.get(ticket.getId());
+                if (entry != null) {
+                    shard.put(ticket.getId(), entry);
+                }
+            }
+            Long previousGeneration = nextShards.remove(month.toString());
+            if (previousGeneration != null) {
+                replaced.add(name(month.toString(), previousGeneration));
+            }
+            if (!shard.isEmpty()) {
+                String name = name(month.toString(), next);
+                PersistenceWorker.writeAtomically(shardDir.resolve(name), TicketJson.MAPPER.writeValueAsBytes(shard));
+                nextShards.put(month.toString(), next);
+                parsed.put(name, shard);
+            }
+        }
+
+        byte[] content = TicketJson.MAPPER.writeValueAsBytes(new Catalog(next, nextShards, catalogTickets, new TreeMap<>(merged)));
+        synchronized (this) {
+            PersistenceWorker.writeAtomically(catalogFile, content);
+            generation = next;
+            shards = nextShards;
+            crc = PersistenceWorker.crc(content);
+            synced = Map.copyOf(merged);
+            parsed.forEach((name, shard) -> cache.put(name, new SoftReference<>(shard)));
+            for (String name : retired) {
+                cache.remove(name);
+                Files.deleteIfExists(shardDir.resolve(name));
+            }
+            retired = replaced;
+            if (!cleaned) {
+                cleanUp();
+                cleaned = true;
+            }
+        }
+        written = nextWritten;
+        entries = nextEntries;
+        log.info("{} written, {} of {} month shards rewritten.", catalogFile, parsed.size(), nextShards.size());
+        return crc;
+    }
+
+    // Hard links to the catalog and its shards in the target directory, which can be read back as a store.
+    // The files are never modified once written, a backup doesn't copy anything.
+    synchronized void link(Path target) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        deleteTree(tmp);
+        Files.createDirectories(tmp.resolve(SHARDS));
+        link(catalogFile, tmp.resolve(CATALOG));
+        for (Map.Entry<String, Long> shard : shards.entrySet()) {
+            String name = name(shard.getKey(), shard.getValue());
+            link(shardDir.resolve(name), tmp.resolve(SHARDS).resolve(name));
+        }
+        deleteTree(target);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Back to a single snapshot file: the catalog and the shards go
+    synchronized void delete() throws IOException {
+        if (!exists() && !Files.exists(shardDir)) {
+            return;
+        }
+        log.info("Remove {} and the month shards.", catalogFile);
+        Files.deleteIfExists(catalogFile);
+        deleteTree(shardDir);
+        generation = 0;
+        shards = new TreeMap<>();
+        synced = Map.of();
+        cache.clear();
+        retired = new ArrayList<>();
+        written = new HashMap<>();
+        entries = new IdentityHashMap<>();
+    }
+
+    private synchronized Map<String, ShardEntry> shard(YearMonth month) throws IOException {
+        Long shardGeneration = shards.get(month.toString());
+        if (shardGeneration == null) {
+            return Map.of();
+        }
+        String name = name(month.toString(), shardGeneration);
+        SoftReference<Map<String, ShardEntry>> cached = cache.get(name);
+        Map<String, ShardEntry> shard = cached == null ? null : cached.get();
+        if (shard == null) {
+            shard = TicketJson.MAPPER.readValue(shardDir.resolve(name).toFile(), SHARD);
+            cache.put(name, new SoftReference<>(shard));
+        }
+        return shard;
+    }
+
+    // Leftovers of an interrupted compaction or of a previous run
+    private void cleanUp() throws IOException {
+        Set<String> kept = new HashSet<>(retired);
+        shards.forEach((month, g) -> kept.add(name(month, g)));
+        try (Stream<Path> files = Files.list(shardDir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                if (!kept.contains(path.getFileName().toString())) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static String name(String month, long generation) {
+        return month + "." + generation + ".json";
+    }
+
+    // Months in which the days of the ticket or of one of its todos differ from the previous copy
+    private static Set<YearMonth> changedMonths(Ticket previous, Ticket ticket) {
+        if (previous == null) {
+            return months(ticket);
+        }
+        Set<YearMonth> months = new TreeSet<>();
+        if (previous.getHistory() == null || previous.getHistory() != ticket.getHistory()) {
+            diff(previous.getDurationsPerDay(), ticket.getDurationsPerDay(), months);
+        }
+        List<TodoItem> before = previous.getTodoItems();
+        List<TodoItem> after = ticket.getTodoItems();
+        for (int i = 0; i < Math.max(before.size(), after.size()); i++) {
+            TodoItem a = i < before.size() ? before.get(i) : null;
+            TodoItem b = i < after.size() ? after.get(i) : null;
+            if (a != null && b != null && a.getHistory() != null && a.getHistory() == b.getHistory()
+                    && a.getHistorySlot() == b.getHistorySlot()) {
+                continue;
+            }
+            diff(a == null ? new DailyDurations() : a.getDurationsPerDay(), b == null ? new DailyDurations() : b.getDurationsPerDay(), months);
+        }
+        return months;
+    }
+
+    private static void diff(DailyDurations a, DailyDurations b, Set<YearMonth> months) {
+        int i = 0;
+        int j = 0;
+        while (i < a.size() || j < b.size()) {
+            int dayA = i < a.size() ? a.dayAt(i) : Integer.MAX_VALUE;
+            int dayB = j < b.size() ? b.dayAt(j) : Integer.MAX_VALUE;
+            if (dayA == dayB) {
+                if (a.secondsAt(i) != b.secondsAt(j)) {
+                    months.add(month(dayA));
+                }
+                i++;
+                j++;
+            } else if (dayA < dayB) {
+                months.add(month(dayA));
+                i++;
+            } else {
+                months.add(month(dayB));
+                j++;
+            }
+        }
+    }
+
+    private static Set<YearMonth> months(Ticket ticket) {
+        Set<YearMonth> months = new TreeSet<>();
+        addMonths(ticket.getDurationsPerDay(), months);
+        for (TodoItem todo : ticket.getTodoItems()) {
+            addMonths(todo.getDurationsPerDay(), months);
+        }
+        return months;
+    }
+
+    private static void addMonths(DailyDurations days, Set<YearMonth> months) {
+        for (int i = 0; i < days.size(); i++) {
+            YearMonth month = month(days.dayAt(i));
+            months.add(month);
+            // Skip to the next month
+            i = days.lowerBound((int) month.atEndOfMonth().toEpochDay() + 1) - 1;
+        }
+    }
+
+    private static YearMonth month(int epochDay) {
+        return YearMonth.from(LocalDate.ofEpochDay(epochDay));
+    }
+
+    private static CatalogTicket entry(Ticket ticket) {
+        List<CatalogTodo> todos = new ArrayList<>();
+        History history = ticket.getHistory();
+        // Still all in the shards as loaded: what the catalog said is still true
+        boolean unread = history != null && history.id.equals(ticket.getId());
+        List<TodoItem> items = ticket.getTodoItems();
+        for (int i = 0; i < items.size(); i++) {
+            TodoItem todo = items.get(i);
+            todos.add(new CatalogTodo(todo.getStatus(), todo.getDescription(), todo.getDuration(), todo.getUpdated()));
+            unread &= todo.getHistory() == history && todo.getHistorySlot() == i;
+        }
+        List<String> months;
+        String lastDay;
+        if (unread) {
+            months = history.entry.months();
+            lastDay = history.entry.lastDay();
+        } else {
+            months = months(ticket).stream().map(YearMonth::toString).toList();
+            DailyDurations days = ticket.getDurationsPerDay();
+            lastDay = days.isEmpty() ? null : LocalDate.ofEpochDay(days.dayAt(days.size() - 1)).toString();
+        }
+        return new CatalogTicket(ticket.getOrder(), ticket.getId(), ticket.getDescription(), ticket.getStatus(),
+                ticket.getDuration(), months, lastDay, todos, ticket.getUpdated());
+    }
+
+    // Days of the ticket and of its todos between the two days, null if there are none
+    private static ShardEntry entry(Ticket ticket, int first, int last) {
+        DailyDurations days = slice(ticket.getDurationsPerDay(), first, last);
+        Map<Integer, DailyDurations> todos = new TreeMap<>();
+        List<TodoItem> items = ticket.getTodoItems();
+        for (int i = 0; i < items.size(); i++) {
+            DailyDurations todoDays = slice(items.get(i).getDurationsPerDay(), first, last);
+            if (!todoDays.isEmpty()) {
+                todos.put(i, todoDays);
+            }
+        }
+        if (days.isEmpty() && todos.isEmpty()) {
+            return null;
+        }
+        return new ShardEntry(days, todos.isEmpty() ? null : todos);
+    }
+
+    private static DailyDurations slice(DailyDurations days, int first, int last) {
+        DailyDurations slice = new DailyDurations();
+        for (int i = days.lowerBound(first); i < days.size() && days.dayAt(i) <= last; i++) {
+            slice.add(days.dayAt(i), days.secondsAt(i));
+        }
+        return slice;
+    }
+
+    private static void append(DailyDurations into, DailyDurations days) {
+        for (int i = 0; i < days.size(); i++) {
+            into.add(days.dayAt(i), days.secondsAt(i));
+        }
+    }
+
+    private static void link(Path existing, Path link) throws IOException {
+        try {
+            Files.createLink(link, existing);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(existing, link);
+        }
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    // Days of a loaded ticket and of its todos, read from the shards of its months on first access.
+    // Shared by the ticket, its todos and their copies, each of them gets its own copy of the days.
+    static final class History {
+
+        private final ShardedStore store;
+        private final String id;
+        private final CatalogTicket entry;
+        private DailyDurations days;
+        private Map<Integer, DailyDurations> todos;
+
+        private History(ShardedStore store, CatalogTicket entry) {
+            this.store = store;
+            this.id = entry.id();
+            this.entry = entry;
+        }
+
+        // Last day of the ticket itself, without reading the shards
+        int lastDay() {
+            return entry.lastDay() == null ? Integer.MIN_VALUE : (int) LocalDate.parse(entry.lastDay()).toEpochDay();
+        }
+
+        synchronized DailyDurations days() {
+            load();
+            return days.copy();
+        }
+
+        synchronized DailyDurations todoDays(int slot) {
+            load();
+            DailyDurations todoDays = todos.get(slot);
+            return todoDays == null ? new DailyDurations() : todoDays.copy();
+        }
+
+        // Days between the two days included, of the ticket or of a todo (slot >= 0). Until the whole history
+        // is loaded, only the shards of their months are read and nothing is kept.
+        synchronized DailyDurations days(int slot, int first, int last) {
+            if (days != null) {
+                DailyDurations loaded = slot < 0 ? days : todos.get(slot);
+                return loaded == null ? new DailyDurations() : slice(loaded, first, last);
+            }
+            YearMonth firstMonth = month(first);
+            YearMonth lastMonth = month(last);
+            DailyDurations result = new DailyDurations();
+            try {
+                for (String month : entry.months()) {
+                    YearMonth m = YearMonth.parse(month);
+                    if (m.isBefore(firstMonth) || m.isAfter(lastMonth)) {
+                        continue;
+                    }
+                    ShardEntry shardEntry = store.shard(m).get(id);
+                    DailyDurations monthDays = shardEntry == null ? null
+                            : slot < 0 ? shardEntry.durationsPerDay()
+                            : shardEntry.todos() == null ? null : shardEntry.todos().get(slot);
+                    if (monthDays != null) {
+                        append(result, slice(monthDays, first, last));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read the durations of ticket " + id, e);
+            }
+            return result;
+        }
+
+        private void load() {
+            if (days != null) {
+                return;
+            }
+            DailyDurations ticketDays = new DailyDurations();
+            Map<Integer, DailyDurations> todoDays = new HashMap<>();
+            try {
+                for (String month : entry.months()) {
+                    ShardEntry shardEntry = store.shard(YearMonth.parse(month)).get(id);
+                    if (shardEntry == null) {
+                        continue;
+                    }
+                    if (shardEntry.durationsPerDay() != null) {
+                        append(ticketDays, shardEntry.durationsPerDay());
+                    }
+                    if (shardEntry.todos() != null) {
+                        shardEntry.todos().forEach((slot, d) -> append(todoDays.computeIfAbsent(slot, s -> new DailyDurations()), d));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read the durations of ticket " + id, e);
+            }
+            days = ticketDays;
+            todos = todoDays;
+        }
+    }
+}
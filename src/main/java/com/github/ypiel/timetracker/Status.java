@@ -0,0 +1,10 @@
+package com.github.ypiel.timetracker;
+
+// Enum pour les statuts
+public enum Status {
+    New,
+    In_Progress,
+    On_Hold,
+    Validation,
+    Done;
+}
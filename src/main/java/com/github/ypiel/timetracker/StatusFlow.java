@@ -0,0 +1,225 @@
+package com.github.ypiel.timetracker;
+
+import java.nio.ByteBuffer;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Cycle times, time in status and throughput computed on the mapped status log, the records are read in place
+// and never turned into objects. An index of the records of each item is built in two passes: the counts per
+// item, then the record numbers grouped by item (offsets in start, like the DailyDurations arrays), sorted by
+// time since the application and the command line may append a bit out of order.
+class StatusFlow {
+
+    // Times as yyyy-MM-ddTHH:mm:ss. lead: from the creation, null when it was created before the log.
+    record CycleTime(String ticket, String started, String done, long cycleSeconds, Long leadSeconds) {
+    }
+
+    // Seconds in each status, the current one up to now
+    record TimeInStatus(String ticket, String todo, Map<Status, Long> seconds) {
+    }
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final Status[] STATUSES = Status.values();
+
+    private final StatusLog log;
+    private final ByteBuffer records;
+    private final int count;
+    // Records of item i: positions[start[i]] to positions[start[i + 1] - 1], by time
+    private final int[] start;
+    private final int[] positions;
+
+    StatusFlow(StatusLog log, ByteBuffer records) {
+        this.log = log;
+        this.records = records;
+        this.count = records.limit() / StatusLog.RECORD_SIZE;
+        int items = log.itemCount();
+        start = new int[items + 1];
+        for (int i = 0; i < count; i++) {
+            int item = item(i);
+            if (item >= 0 && item < items) {
+                start[item + 1]++;
+            }
+        }
+        for (int i = 0; i < items; i++) {
+            start[i + 1] += start[i];
+        }
+        positions = new int[start[items]];
+        int[] next = new int[items];
+        System.arraycopy(start, 0, next, 0, items);
+        for (int i = 0; i < count; i++) {
+            int item = item(i);
+            if (item >= 0 && item < items) {
+                positions[next[item]++] = i;
+            }
+        }
+        for (int i = 0; i < items; i++) {
+            sortByTime(start[i], start[i + 1]);
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    // Every ticket done between the two days included, once per time it was done: from its first move to
+    // In_Progress after it was created or last done, to Done. The ones done without going through In_Progress are left out.
+    List<CycleTime> cycleTimes(LocalDate from, LocalDate to) {
+        long min = startOf(from);
+        long max = endOf(to);
+        List<CycleTime> cycleTimes = new ArrayList<>();
+        for (int item = 0; item < log.itemCount(); item++) {
+            if (log.parent(item) >= 0) {
+                continue;
+            }
+            long created = -1;
+            long started = -1;
+            for (int p = start[item]; p < start[item + 1]; p++) {
+                int r = positions[p];
+                long time = time(r);
+                if (from(r) < 0) {
+                    created = time;
+                }
+                int status = to(r);
+                if (status == Status.In_Progress.ordinal() && started < 0) {
+                    started = time;
+                } else if (status == Status.Done.ordinal()) {
+                    if (started >= 0 && time >= min && time < max) {
+                        cycleTimes.add(new CycleTime(log.name(item), format(started), format(time), (time - started) / 1000,
+                                created < 0 ? null : (time - created) / 1000));
+                    }
+                    started = -1;
+                    created = -1;
+                }
+            }
+        }
+        return cycleTimes;
+    }
+
+    // Tickets moved to Done per week (monday) between the two days, the weeks without any included
+    SortedMap<String, Integer> throughput(LocalDate from, LocalDate to) {
+        long min = startOf(from);
+        long max = endOf(to);
+        TreeMap<LocalDate, Integer> weeks = new TreeMap<>();
+        int done = Status.Done.ordinal();
+        for (int r = 0; r < count; r++) {
+            int item = item(r);
+            long time = time(r);
+            if (to(r) == done && time >= min && time < max && item >= 0 && item < log.itemCount() && log.parent(item) < 0) {
+                weeks.merge(week(time), 1, Integer::sum);
+            }
+        }
+        SortedMap<String, Integer> throughput = new TreeMap<>();
+        if (!weeks.isEmpty()) {
+            for (LocalDate week = weeks.firstKey(); !week.isAfter(weeks.lastKey()); week = week.plusWeeks(1)) {
+                throughput.put(week.toString(), weeks.getOrDefault(week, 0));
+            }
+        }
+        return throughput;
+    }
+
+    // The ticket and its todos, null if its status never changed since the log exists
+    List<TimeInStatus> timeInStatus(String ticket) {
+        int item = log.ticketItem(ticket);
+        if (item < 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        List<TimeInStatus> result = new ArrayList<>();
+        result.add(new TimeInStatus(ticket, null, timeInStatus(item, now)));
+        for (int todo = item + 1; todo < log.itemCount(); todo++) {
+            if (log.parent(todo) == item && log.todoItem(item, log.name(todo)) == todo) {
+                result.add(new TimeInStatus(ticket, log.name(todo), timeInStatus(todo, now)));
+            }
+        }
+        return result;
+    }
+
+    // The current tickets, each one from its first transition
+    List<TimeInStatus> timeInStatus() {
+        long now = System.currentTimeMillis();
+        List<TimeInStatus> result = new ArrayList<>();
+        for (int item = 0; item < log.itemCount(); item++) {
+            if (log.parent(item) < 0 && log.ticketItem(log.name(item)) == item) {
+                result.add(new TimeInStatus(log.name(item), null, timeInStatus(item, now)));
+            }
+        }
+        return result;
+    }
+
+    private Map<Status, Long> timeInStatus(int item, long now) {
+        long[] millis = new long[STATUSES.length];
+        for (int p = start[item]; p < start[item + 1]; p++) {
+            int r = positions[p];
+            long end = p + 1 < start[item + 1] ? time(positions[p + 1]) : now;
+            millis[to(r)] += Math.max(0, end - time(r));
+        }
+        Map<Status, Long> seconds = new EnumMap<>(Status.class);
+        for (Status status : STATUSES) {
+            seconds.put(status, millis[status.ordinal()] / 1000);
+        }
+        return seconds;
+    }
+
+    // Insertion sort, an item has a few records mostly in order already
+    private void sortByTime(int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            int r = positions[i];
+            long time = time(r);
+            int j = i - 1;
+            while (j >= from && time(positions[j]) > time) {
+                positions[j + 1] = positions[j];
+                j--;
+            }
+            positions[j + 1] = r;
+        }
+    }
+
+    private long time(int r) {
+        return records.getLong(r * StatusLog.RECORD_SIZE);
+    }
+
+    private int item(int r) {
+        return records.getInt(r * StatusLog.RECORD_SIZE + 8);
+    }
+
+    private int from(int r) {
+        return records.get(r * StatusLog.RECORD_SIZE + 12);
+    }
+
+    private int to(int r) {
+        return records.get(r * StatusLog.RECORD_SIZE + 13);
+    }
+
+    private static long startOf(LocalDate day) {
+        if (day.equals(LocalDate.MIN)) {
+            return Long.MIN_VALUE;
+        }
+        if (day.isAfter(LocalDate.of(9999, 1, 1))) {
+            return Long.MAX_VALUE;
+        }
+        return day.atStartOfDay(ZONE).toInstant().toEpochMilli();
+    }
+
+    private static long endOf(LocalDate day) {
+        return day.isAfter(LocalDate.of(9999, 1, 1)) ? Long.MAX_VALUE : startOf(day.plusDays(1));
+    }
+
+    private static LocalDate week(long time) {
+        return Instant.ofEpochMilli(time).atZone(ZONE).toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    private static String format(long time) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZONE).truncatedTo(ChronoUnit.SECONDS).toString();
+    }
+}
@@ -0,0 +1,249 @@
+package com.github.ypiel.timetracker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Append-only log of the status transitions of the tickets and todos, read by StatusFlow.
+// status.log holds fixed records of 16 bytes: the time in ms, the item, the status left (-1 when the item was just
+// created) and the status entered, as ordinals. status.items names each item once: its number, the number of its
+// ticket for a todo (-1 for a ticket) and the ticket ID or the todo description. A renamed item gets another entry
+// with the same number; a created one always gets a new number, so an ID used again starts a new history.
+// Both files are appended under the journal lock, by the persistence thread or the command line, the items first.
+// A record torn by a crash is cut before the next append.
+@Slf4j
+class StatusLog {
+
+    interface Change {
+    }
+
+    // todo: the todo description, null for the ticket itself. from: null when it was just created.
+    record Transition(long time, String ticket, String todo, Status from, Status to) implements Change {
+    }
+
+    // The ticket or one of its todos (todo not null) got a new ID or description, previous being the old one
+    record Renamed(String ticket, String todo, String previous) implements Change {
+    }
+
+    static final int RECORD_SIZE = 16;
+    private static final int ENTRY_HEADER = 12;
+
+    private final Path logFile;
+    private final Path itemsFile;
+
+    // Items read from status.items up to itemsRead bytes
+    private final Map<String, Integer> tickets = new HashMap<>();
+    // ticket item + "/" + description -> item
+    private final Map<String, Integer> todos = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] parents = new int[64];
+    private long itemsRead = 0;
+
+    StatusLog(Path dir) {
+        this.logFile = dir.resolve("status.log");
+        this.itemsFile = dir.resolve("status.items");
+    }
+
+    // The caller holds the journal lock
+    void append(List<Change> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            refresh();
+            ByteArrayOutputStream items = new ByteArrayOutputStream();
+            ByteBuffer records = ByteBuffer.allocate(changes.size() * RECORD_SIZE);
+            for (Change change : changes) {
+                if (change instanceof Transition t) {
+                    int item = item(t, items);
+                    records.putLong(t.time()).putInt(item)
+                            .put((byte) (t.from() == null ? -1 : t.from().ordinal()))
+                            .put((byte) t.to().ordinal())
+                            .putShort((short) 0);
+                } else {
+                    rename((Renamed) change, items);
+                }
+            }
+            if (items.size() > 0) {
+                itemsRead = write(itemsFile, itemsRead, items.toByteArray());
+            }
+            if (records.position() > 0) {
+                long size = Files.exists(logFile) ? Files.size(logFile) : 0;
+                write(logFile, size - size % RECORD_SIZE, Arrays.copyOf(records.array(), records.position()));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Read everything again next time, the names given in memory may not be on disk
+            clear();
+            throw e;
+        }
+    }
+
+    // The records mapped as they are now, with the items named up to them
+    StatusFlow flow() throws IOException {
+        refresh();
+        if (!Files.exists(logFile)) {
+            return new StatusFlow(this, ByteBuffer.allocate(0));
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return new StatusFlow(this, channel.map(FileChannel.MapMode.READ_ONLY, 0, size - size % RECORD_SIZE));
+        }
+    }
+
+    int itemCount() {
+        return names.size();
+    }
+
+    String name(int item) {
+        return names.get(item);
+    }
+
+    // -1 for a ticket
+    int parent(int item) {
+        return parents[item];
+    }
+
+    // Latest item with that ID or description, -1 if it never changed status
+    int ticketItem(String ticket) {
+        return tickets.getOrDefault(ticket, -1);
+    }
+
+    int todoItem(int ticketItem, String todo) {
+        return todos.getOrDefault(ticketItem + "/" + todo, -1);
+    }
+
+    private int item(Transition t, ByteArrayOutputStream items) throws IOException {
+        int ticket = t.todo() == null && t.from() == null ? -1 : ticketItem(t.ticket());
+        if (ticket < 0) {
+            ticket = entry(names.size(), -1, t.ticket(), items);
+        }
+        if (t.todo() == null) {
+            return ticket;
+        }
+        int todo = t.from() == null ? -1 : todoItem(ticket, t.todo());
+        return todo >= 0 ? todo : entry(names.size(), ticket, t.todo(), items);
+    }
+
+    // An item never seen is named at its first transition
+    private void rename(Renamed r, ByteArrayOutputStream items) throws IOException {
+        if (r.todo() == null) {
+            int ticket = ticketItem(r.previous());
+            if (ticket >= 0) {
+                entry(ticket, -1, r.ticket(), items);
+            }
+            return;
+        }
+        int ticket = ticketItem(r.ticket());
+        int todo = ticket < 0 ? -1 : todoItem(ticket, r.previous());
+        if (todo >= 0) {
+            entry(todo, ticket, r.todo(), items);
+        }
+    }
+
+    private int entry(int item, int parent, String name, ByteArrayOutputStream items) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        DataOutputStream out = new DataOutputStream(items);
+        out.writeInt(item);
+        out.writeInt(parent);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        named(item, parent, name);
+        return item;
+    }
+
+    private void named(int item, int parent, String name) {
+        if (item == names.size()) {
+            names.add(name);
+            if (item == parents.length) {
+                parents = Arrays.copyOf(parents, item * 2);
+            }
+            parents[item] = parent;
+        } else if (item < names.size()) {
+            unmap(item);
+            names.set(item, name);
+        } else {
+            log.warn("Status item {} named before item {}, ignored.", item, names.size());
+            return;
+        }
+        if (parent < 0) {
+            tickets.put(name, item);
+        } else {
+            todos.put(parent + "/" + name, item);
+        }
+    }
+
+    private void unmap(int item) {
+        if (parents[item] < 0) {
+            tickets.remove(names.get(item), item);
+        } else {
+            todos.remove(parents[item] + "/" + names.get(item), item);
+        }
+    }
+
+    // Entries appended since the previous call, by this process or another one
+    private void refresh() throws IOException {
+        if (!Files.exists(itemsFile)) {
+            return;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(itemsFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= itemsRead) {
+                return;
+            }
+            buffer = ByteBuffer.allocate((int) (size - itemsRead));
+            while (buffer.hasRemaining() && channel.read(buffer, itemsRead + buffer.position()) >= 0) {
+                // read until the end
+            }
+        }
+        buffer.flip();
+        while (buffer.remaining() >= ENTRY_HEADER) {
+            int start = buffer.position();
+            int item = buffer.getInt();
+            int parent = buffer.getInt();
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                // Torn entry
+                buffer.position(start);
+                break;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            named(item, parent, new String(bytes, StandardCharsets.UTF_8));
+        }
+        itemsRead += buffer.position();
+    }
+
+    private void clear() {
+        tickets.clear();
+        todos.clear();
+        names.clear();
+        itemsRead = 0;
+    }
+
+    // Append at the end of what is valid, a torn tail is overwritten. Returns the new end.
+    private static long write(Path file, long end, byte[] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(end);
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, end + buffer.position());
+            }
+            channel.force(false);
+        }
+        return end + content.length;
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.ypiel.timetracker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+// Format of the tickets snapshot. The codec used to read a file is found from its first bytes, the one
+// used to write is chosen with the time-tracker.codec system property: a file is converted to another
+// format by the next compaction.
+interface StorageCodec {
+
+    String CODEC_PROPERTY = "time-tracker.codec";
+
+    List<StorageCodec> CODECS = List.of(new TicketJson(), new JsonCodec(), new BinaryCodec());
+
+    String name();
+
+    // true if the content starts like a file written by this codec
+    boolean accepts(byte[] content);
+
+    List<Ticket> read(byte[] content) throws IOException;
+
+    void write(List<Ticket> tickets, OutputStream out) throws IOException;
+
+    static StorageCodec configured() {
+        String name = System.getProperty(CODEC_PROPERTY, TicketJson.NAME);
+        for (StorageCodec codec : CODECS) {
+            if (codec.name().equals(name)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown " + CODEC_PROPERTY + ": " + name);
+    }
+
+    // The configured codec if it can read the content, otherwise the first one that can
+    static StorageCodec detect(byte[] content) throws IOException {
+        StorageCodec configured = configured();
+        if (configured.accepts(content)) {
+            return configured;
+        }
+        for (StorageCodec codec : CODECS) {
+            if (codec.accepts(content)) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown time-tracker data format.");
+    }
+
+    // First byte which isn't a JSON white space is the start of an array
+    static boolean isJsonArray(byte[] content) {
+        for (byte b : content) {
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b == '[';
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,208 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+// Getters and setters only: the Lombok equals/hashCode/toString would go through the lazy getters and parse
+// the whole history. Tickets and todos are compared by identity, toString shows the plain fields.
+@Getter
+@Setter
+@ToString(onlyExplicitlyIncluded = true)
+class Ticket {
+    private static final VarHandle DURATION;
+
+    static {
+        try {
+            DURATION = MethodHandles.lookup().findVarHandle(Ticket.class, "duration", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private int order = 0;
+    @ToString.Include
+    private String id;
+    private String description;
+    @ToString.Include
+    private Status status;
+    // en secondes, volatile and incremented atomically: read by the UI and the API while the clock credits it
+    @ToString.Include
+    private volatile long duration;
+    private DailyDurations durationsPerDay;
+    private List<TodoItem> todoItems;
+
+    // Raw JSON of durationsPerDay and todoItems as loaded by TicketJson, parsed on first access
+    @JsonIgnore
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private String rawDurationsPerDay;
+    @JsonIgnore
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.NONE)
+    private String rawTodoItems;
+    // Todos in rawTodoItems, -1 until counted
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int rawTodoCount = -1;
+    // Days still in the month shards, for a ticket read by ShardedStore: read on first access
+    @JsonIgnore
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private ShardedStore.History history;
+    // Time of the last change of order, id, description or status in ms, the latest one wins between devices
+    @JsonIgnore
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private long updated;
+
+    public Ticket() {
+        this.durationsPerDay = new DailyDurations();
+        this.todoItems = new ArrayList<>();
+    }
+
+    public Ticket(int order, String id, String description, Status status) {
+        this.order = order;
+        this.id = id;
+        this.description = description;
+        this.status = status;
+        this.duration = 0;
+        this.durationsPerDay = new DailyDurations();
+        this.todoItems = new ArrayList<>();
+    }
+
+    public void incrementDuration(long elapsedSeconds) {
+        DURATION.getAndAdd(this, elapsedSeconds);
+    }
+
+    // Deep copy handed over to the persistence thread, the parts still not parsed are shared
+    public synchronized Ticket copy() {
+        Ticket copy = new Ticket(order, id, description, status);
+        copy.duration = duration;
+        copy.rawDurationsPerDay = rawDurationsPerDay;
+        copy.rawTodoItems = rawTodoItems;
+        copy.rawTodoCount = rawTodoCount;
+        copy.history = history;
+        copy.updated = updated;
+        if (rawDurationsPerDay == null && history == null) {
+            copy.durationsPerDay = durationsPerDay.copy();
+        }
+        if (rawTodoItems == null) {
+            for (TodoItem todo : todoItems) {
+                copy.todoItems.add(todo.copy());
+            }
+        }
+        return copy;
+    }
+
+    public void incrementDurationForDay(int epochDay, long elapsedSeconds) {
+        getDurationsPerDay().add(epochDay, elapsedSeconds);
+    }
+
+    // The lazy parts are synchronized: the UI may parse them while the service thread credits the ticket
+    public synchronized DailyDurations getDurationsPerDay() {
+        if (rawDurationsPerDay != null) {
+            try {
+                durationsPerDay = TicketJson.MAPPER.readValue(rawDurationsPerDay, DailyDurations.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read the durations of ticket " + id, e);
+            }
+            rawDurationsPerDay = null;
+        }
+        if (history != null) {
+            durationsPerDay = history.days();
+            history = null;
+        }
+        return durationsPerDay;
+    }
+
+    // At least the days between the two days included, for the readers of a range: the shards of the other
+    // months aren't read
+    synchronized DailyDurations durationsBetween(int firstDay, int lastDay) {
+        if (history != null) {
+            return history.days(-1, firstDay, lastDay);
+        }
+        return getDurationsPerDay();
+    }
+
+    public synchronized void setDurationsPerDay(DailyDurations durationsPerDay) {
+        this.durationsPerDay = durationsPerDay;
+        this.rawDurationsPerDay = null;
+        this.history = null;
+    }
+
+    // Epoch day of the last day with some time, Integer.MIN_VALUE if none. The shards aren't read for it.
+    synchronized int lastDay() {
+        if (history != null) {
+            return history.lastDay();
+        }
+        DailyDurations days = getDurationsPerDay();
+        return days.isEmpty() ? Integer.MIN_VALUE : days.dayAt(days.size() - 1);
+    }
+
+    public synchronized List<TodoItem> getTodoItems() {
+        if (rawTodoItems != null) {
+            try {
+                todoItems = TicketJson.MAPPER.readValue(rawTodoItems, new TypeReference<ArrayList<TodoItem>>() {
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read the todos of ticket " + id, e);
+            }
+            rawTodoItems = null;
+        }
+        return todoItems;
+    }
+
+    synchronized void setRawTodoItems(String rawTodoItems) {
+        this.rawTodoItems = rawTodoItems;
+        this.rawTodoCount = -1;
+    }
+
+    // Number of todos, counted in the raw JSON when they still aren't parsed
+    synchronized int todoCount() {
+        if (rawTodoItems != null) {
+            if (rawTodoCount < 0) {
+                try {
+                    rawTodoCount = TicketJson.todoCount(rawTodoItems);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Can't read the todos of ticket " + id, e);
+                }
+            }
+            return rawTodoCount;
+        }
+        return todoItems.size();
+    }
+
+    // Descriptions of the todos, pulled out of the raw JSON when they still aren't parsed
+    synchronized List<String> todoDescriptions() {
+        if (rawTodoItems != null) {
+            try {
+                return TicketJson.todoDescriptions(rawTodoItems);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read the todos of ticket " + id, e);
+            }
+        }
+        List<String> descriptions = new ArrayList<>(todoItems.size());
+        for (TodoItem todo : todoItems) {
+            descriptions.add(todo.getDescription());
+        }
+        return descriptions;
+    }
+
+    public synchronized void setTodoItems(List<TodoItem> todoItems) {
+        this.todoItems = todoItems;
+        this.rawTodoItems = null;
+    }
+}
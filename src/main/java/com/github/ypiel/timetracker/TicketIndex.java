@@ -0,0 +1,74 @@
+package com.github.ypiel.timetracker;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Index over the tickets list: ticket by id and position of a ticket in the list, which is also its
+// row in the TicketTableModel. Tickets are compared by identity, never with the Lombok equals that
+// walks through every todo and every day.
+class TicketIndex {
+
+    private final Map<String, Ticket> byId = new HashMap<>();
+    private final Map<Ticket, Integer> rows = new IdentityHashMap<>();
+    private List<Ticket> tickets = List.of();
+
+    void reset(List<Ticket> tickets) {
+        this.tickets = tickets;
+        byId.clear();
+        rows.clear();
+        for (int i = 0; i < tickets.size(); i++) {
+            Ticket ticket = tickets.get(i);
+            byId.put(ticket.getId(), ticket);
+            rows.put(ticket, i);
+        }
+    }
+
+    Ticket get(String id) {
+        return byId.get(id);
+    }
+
+    boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+
+    // Position of the ticket in the list, -1 if it isn't there
+    int rowOf(Ticket ticket) {
+        Integer row = rows.get(ticket);
+        return row == null ? -1 : row;
+    }
+
+    // The ticket has just been appended to the list
+    void added(Ticket ticket) {
+        byId.put(ticket.getId(), ticket);
+        rows.put(ticket, tickets.size() - 1);
+    }
+
+    void renamed(String previousId, Ticket ticket) {
+        if (byId.get(previousId) == ticket) {
+            byId.remove(previousId);
+        }
+        byId.put(ticket.getId(), ticket);
+    }
+
+    // The ticket at this position has just been removed from the list, the next ones moved up
+    void removed(Ticket ticket, int row) {
+        if (byId.get(ticket.getId()) == ticket) {
+            byId.remove(ticket.getId());
+        }
+        rows.remove(ticket);
+        for (int i = row; i < tickets.size(); i++) {
+            rows.put(tickets.get(i), i);
+        }
+    }
+
+    static int identityIndexOf(List<?> list, Object o) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == o) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
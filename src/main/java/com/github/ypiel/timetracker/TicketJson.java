@@ -0,0 +1,144 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streaming reader/writer of time-tracker.json.
+// Only the fields shown in the ticket table are read at startup, durationsPerDay and todoItems are kept
+// as raw JSON in the ticket and parsed when first accessed. A ticket never opened is written back as is.
+class TicketJson implements StorageCodec {
+
+    static final String NAME = "json-stream";
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean accepts(byte[] content) {
+        return StorageCodec.isJsonArray(content);
+    }
+
+    @Override
+    public List<Ticket> read(byte[] content) throws IOException {
+        List<Ticket> tickets = new ArrayList<>();
+        try (JsonParser parser = FACTORY.createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("A JSON array of tickets is expected.");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                tickets.add(readTicket(parser, content));
+            }
+        }
+        return tickets;
+    }
+
+    private static Ticket readTicket(JsonParser parser, byte[] content) throws IOException {
+        Ticket ticket = new Ticket();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "order" -> ticket.setOrder(parser.getIntValue());
+                case "id" -> ticket.setId(parser.getValueAsString());
+                case "description" -> ticket.setDescription(parser.getValueAsString());
+                case "status" -> ticket.setStatus(token == JsonToken.VALUE_NULL ? null : Status.valueOf(parser.getText()));
+                case "duration" -> ticket.setDuration(parser.getLongValue());
+                case "durationsPerDay" -> ticket.setRawDurationsPerDay(raw(parser, content));
+                case "todoItems" -> ticket.setRawTodoItems(raw(parser, content));
+                default -> parser.skipChildren();
+            }
+        }
+        return ticket;
+    }
+
+    // Bytes of the current value, which is skipped
+    private static String raw(JsonParser parser, byte[] content) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        int start = (int) parser.currentTokenLocation().getByteOffset();
+        parser.skipChildren();
+        int end = (int) parser.currentLocation().getByteOffset();
+        return new String(content, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // Todos of a raw todoItems array, skipped without being built
+    static int todoCount(String rawTodoItems) throws IOException {
+        int count = 0;
+        try (JsonParser parser = FACTORY.createParser(rawTodoItems)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return 0;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The description of each todo of a raw todoItems array, the todos themselves aren't built
+    static List<String> todoDescriptions(String rawTodoItems) throws IOException {
+        List<String> descriptions = new ArrayList<>();
+        try (JsonParser parser = FACTORY.createParser(rawTodoItems)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return descriptions;
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    parser.nextToken();
+                    if (field.equals("description")) {
+                        descriptions.add(parser.getValueAsString());
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return descriptions;
+    }
+
+    @Override
+    public void write(List<Ticket> tickets, OutputStream out) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            generator.writeStartArray();
+            for (Ticket ticket : tickets) {
+                generator.writeStartObject();
+                generator.writeNumberField("order", ticket.getOrder());
+                generator.writeStringField("id", ticket.getId());
+                generator.writeStringField("description", ticket.getDescription());
+                generator.writeStringField("status", ticket.getStatus() == null ? null : ticket.getStatus().name());
+                generator.writeNumberField("duration", ticket.getDuration());
+                generator.writeFieldName("durationsPerDay");
+                if (ticket.getRawDurationsPerDay() != null) {
+                    generator.writeRawValue(ticket.getRawDurationsPerDay());
+                } else {
+                    MAPPER.writeValue(generator, ticket.getDurationsPerDay());
+                }
+                generator.writeFieldName("todoItems");
+                if (ticket.getRawTodoItems() != null) {
+                    generator.writeRawValue(ticket.getRawTodoItems());
+                } else {
+                    MAPPER.writeValue(generator, ticket.getTodoItems());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.github.ypiel.timetracker;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Ticket table over the EDT's own copy of the tickets list, plus a last empty row to type a new ticket.
+// The rows only change on the EDT when the application relays the TrackingService notifications.
+// Edits of existing tickets go through the Editor, the application tells which rows changed.
+class TicketTableModel extends AbstractTableModel {
+    private final static long serialVersionUID = 1L;
+
+    final static int TICKET_TABLE_COLUMN_ORDER = 0;
+    final static int TICKET_TABLE_COLUMN_ID = 1;
+    final static int TICKET_TABLE_COLUMN_DESC = 2;
+    final static int TICKET_TABLE_COLUMN_STATUS = 3;
+    final static int TICKET_TABLE_COLUMN_DURATION = 4;
+    final static int TICKET_TABLE_COLUMN_OPEN = 5;
+    final static int TICKET_TABLE_COLUMN_DELETE = 6;
+
+    private final static String[] COLUMNS = {"Order", "ID", "Description", "Status", "Duration", "Open", "Delete"};
+
+    interface Editor {
+        // Apply the value to the ticket, false if it is rejected
+        boolean edit(Ticket ticket, int column, Object value);
+    }
+
+    private final transient Editor editor;
+    private transient List<Ticket> tickets = new ArrayList<>();
+    private final transient TicketIndex rows = new TicketIndex();
+
+    // Values of the new ticket row
+    private int draftOrder = 0;
+    private String draftId = "";
+    private String draftDescription = "";
+    private Status draftStatus = Status.New;
+
+    TicketTableModel(Editor editor) {
+        this.editor = editor;
+    }
+
+    // The table sorts and filters its rows again synchronously, measured with the copy
+    void setTickets(List<Ticket> tickets) {
+        Metrics.TableRebuildEvent event = new Metrics.TableRebuildEvent();
+        event.begin();
+        long start = System.nanoTime();
+        this.tickets = new ArrayList<>(tickets);
+        rows.reset(this.tickets);
+        fireTableDataChanged();
+        Metrics.TABLE_REBUILD.record(System.nanoTime() - start);
+        event.rows = tickets.size();
+        event.commit();
+    }
+
+    // -1 if the ticket isn't shown
+    int rowOf(Ticket ticket) {
+        return rows.rowOf(ticket);
+    }
+
+    // null for the new ticket row
+    Ticket getTicket(int row) {
+        return row < tickets.size() ? tickets.get(row) : null;
+    }
+
+    boolean isDraft(int row) {
+        return row == tickets.size();
+    }
+
+    int getDraftOrder() {
+        return draftOrder;
+    }
+
+    String getDraftId() {
+        return draftId;
+    }
+
+    String getDraftDescription() {
+        return draftDescription;
+    }
+
+    Status getDraftStatus() {
+        return draftStatus;
+    }
+
+    void resetDraft() {
+        draftOrder = 0;
+        draftId = "";
+        draftDescription = "";
+        draftStatus = Status.New;
+        fireTableRowsUpdated(tickets.size(), tickets.size());
+    }
+
+    void ticketAdded(Ticket ticket) {
+        if (rows.rowOf(ticket) >= 0) {
+            return;
+        }
+        tickets.add(ticket);
+        rows.added(ticket);
+        fireTableRowsInserted(tickets.size() - 1, tickets.size() - 1);
+    }
+
+    void ticketRemoved(Ticket ticket) {
+        int row = rows.rowOf(ticket);
+        if (row < 0) {
+            return;
+        }
+        tickets.remove(row);
+        rows.removed(ticket, row);
+        fireTableRowsDeleted(row, row);
+    }
+
+    void ticketChanged(Ticket ticket) {
+        int row = rows.rowOf(ticket);
+        if (row >= 0) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    void durationChanged(Ticket ticket) {
+        int row = rows.rowOf(ticket);
+        if (row >= 0) {
+            fireTableCellUpdated(row, TICKET_TABLE_COLUMN_DURATION);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return tickets.size() + 1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return switch (column) {
+            case TICKET_TABLE_COLUMN_ORDER -> Integer.class;
+            case TICKET_TABLE_COLUMN_STATUS -> Status.class;
+            case TICKET_TABLE_COLUMN_DURATION -> Long.class;
+            default -> String.class;
+        };
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        // Permettre l'édition des colonnes ID et Description
+        return column == TICKET_TABLE_COLUMN_ORDER ||
+                column == TICKET_TABLE_COLUMN_ID || column == TICKET_TABLE_COLUMN_DESC ||
+                column == TICKET_TABLE_COLUMN_STATUS || column == TICKET_TABLE_COLUMN_OPEN ||
+                column == TICKET_TABLE_COLUMN_DELETE;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Ticket ticket = getTicket(row);
+        if (ticket == null) {
+            return switch (column) {
+                case TICKET_TABLE_COLUMN_ORDER -> draftOrder;
+                case TICKET_TABLE_COLUMN_ID -> draftId;
+                case TICKET_TABLE_COLUMN_DESC -> draftDescription;
+                case TICKET_TABLE_COLUMN_STATUS -> draftStatus;
+                case TICKET_TABLE_COLUMN_DURATION -> null;
+                default -> "";
+            };
+        }
+        return switch (column) {
+            case TICKET_TABLE_COLUMN_ORDER -> ticket.getOrder();
+            case TICKET_TABLE_COLUMN_ID -> ticket.getId();
+            case TICKET_TABLE_COLUMN_DESC -> ticket.getDescription();
+            case TICKET_TABLE_COLUMN_STATUS -> ticket.getStatus();
+            case TICKET_TABLE_COLUMN_DURATION -> ticket.getDuration();
+            case TICKET_TABLE_COLUMN_OPEN -> "Open";
+            case TICKET_TABLE_COLUMN_DELETE -> "Delete";
+            default -> null;
+        };
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        Ticket ticket = getTicket(row);
+        if (ticket == null) {
+            switch (column) {
+                case TICKET_TABLE_COLUMN_ORDER -> draftOrder = value == null ? 0 : (Integer) value;
+                case TICKET_TABLE_COLUMN_ID -> draftId = (String) value;
+                case TICKET_TABLE_COLUMN_DESC -> draftDescription = (String) value;
+                case TICKET_TABLE_COLUMN_STATUS -> draftStatus = (Status) value;
+                default -> {
+                    return;
+                }
+            }
+            fireTableCellUpdated(row, column);
+        } else if (editor.edit(ticket, column, value)) {
+            fireTableCellUpdated(row, column);
+        }
+    }
+}
@@ -0,0 +1,764 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Time entries imported and exported in bulk, an entry being the seconds of a ticket or of one of its todos on a day.
+// A todo entry counts for the ticket too, a ticket entry is the time on the ticket outside of its todos: the entries
+// of a ticket add up to its duration, so that a timesheet can be summed as it is.
+//   csv: ticket,todo,day,seconds,status,description with a header, the columns in any order, "duration" (HH:MM:SS)
+//        instead of "seconds" is accepted
+//   jsonl: one object per line with the same fields
+//   ics: an all-day VEVENT per entry, the seconds in X-TIME-TRACKER-SECONDS. The timed events of other calendars
+//        count for their duration, split at midnight, the SUMMARY being the ticket.
+// Status and description are only used to create a ticket or a todo. The entries are read and written one at a
+// time: the memory used doesn't depend on the size of the file. A malformed entry is skipped and counted.
+@Slf4j
+final class TimeEntries {
+
+    // todo null for the ticket itself, status and description may be null
+    record Entry(String ticket, String todo, LocalDate day, long seconds, Status status, String description) {
+    }
+
+    enum Format {
+        CSV, JSONL, ICS;
+
+        static Format of(String name) {
+            return switch (name.toLowerCase(Locale.ROOT)) {
+                case "csv" -> CSV;
+                case "jsonl", "ndjson" -> JSONL;
+                case "ics", "ical" -> ICS;
+                default -> throw new IllegalArgumentException("Unknown format " + name + ", csv, jsonl or ics expected.");
+            };
+        }
+
+        String contentType() {
+            return switch (this) {
+                case CSV -> "text/csv; charset=utf-8";
+                case JSONL -> "application/x-ndjson";
+                case ICS -> "text/calendar; charset=utf-8";
+            };
+        }
+
+        // From the file extension
+        static Format of(Path file) {
+            String name = file.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            return of(dot < 0 ? "" : name.substring(dot + 1));
+        }
+    }
+
+    interface Reader extends Closeable {
+        // null at the end
+        Entry next() throws IOException;
+
+        long skipped();
+
+        // Bytes read from the input, for the progress
+        long position();
+    }
+
+    interface Writer extends Closeable {
+        void write(Entry entry) throws IOException;
+    }
+
+    private static final int LOGGED_ERRORS = 10;
+
+    private TimeEntries() {
+    }
+
+    static Reader reader(InputStream in, Format format) {
+        Counting counting = new Counting(in);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(counting, StandardCharsets.UTF_8), 1 << 16);
+        return switch (format) {
+            case CSV -> new CsvReader(reader, counting);
+            case JSONL -> new JsonlReader(reader, counting);
+            case ICS -> new IcsReader(reader, counting);
+        };
+    }
+
+    static Writer writer(OutputStream out, Format format) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        return switch (format) {
+            case CSV -> new CsvWriter(writer);
+            case JSONL -> new JsonlWriter(writer);
+            case ICS -> new IcsWriter(writer);
+        };
+    }
+
+    // The entries of the tickets between the two days included, in the order of the tickets then of the days.
+    // Returns the number of entries written.
+    static long export(List<Ticket> tickets, LocalDate from, LocalDate to, Writer writer) throws IOException {
+        int first = (int) Math.max(Integer.MIN_VALUE, from.toEpochDay());
+        int last = (int) Math.min(Integer.MAX_VALUE, to.toEpochDay());
+        long count = 0;
+        for (Ticket ticket : tickets) {
+            DailyDurations days = ticket.getDurationsPerDay();
+            List<TodoItem> todos = ticket.getTodoItems();
+            for (int i = days.lowerBound(first); i < days.size() && days.dayAt(i) <= last; i++) {
+                int day = days.dayAt(i);
+                LocalDate date = LocalDate.ofEpochDay(day);
+                long own = days.secondsAt(i);
+                for (TodoItem todo : todos) {
+                    int index = todo.getDurationsPerDay().indexOf(day);
+                    if (index >= 0) {
+                        own -= todo.getDurationsPerDay().secondsAt(index);
+                    }
+                }
+                if (own > 0) {
+                    writer.write(new Entry(ticket.getId(), null, date, own, ticket.getStatus(), ticket.getDescription()));
+                    count++;
+                }
+                for (TodoItem todo : todos) {
+                    int index = todo.getDurationsPerDay().indexOf(day);
+                    if (index >= 0 && todo.getDurationsPerDay().secondsAt(index) > 0) {
+                        writer.write(new Entry(ticket.getId(), todo.getDescription(), date,
+                                todo.getDurationsPerDay().secondsAt(index), todo.getStatus(), null));
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // Validation shared by the readers, null when the entry can't be imported
+    private static Entry entry(String ticket, String todo, String day, long seconds, String status, String description) {
+        if (ticket == null || ticket.isBlank() || day == null || seconds <= 0) {
+            return null;
+        }
+        return new Entry(ticket.trim(), todo == null || todo.isBlank() ? null : todo.trim(), day(day.trim()),
+                seconds, status == null || status.isBlank() ? null : Cli.status(status.trim()),
+                description == null || description.isEmpty() ? null : description);
+    }
+
+    // yyyy-MM-dd without the formatter, the other forms are left to LocalDate.parse
+    private static LocalDate day(String value) {
+        if (value.length() == 10 && value.charAt(4) == '-' && value.charAt(7) == '-') {
+            int year = digits(value, 0, 4);
+            int month = digits(value, 5, 7);
+            int day = digits(value, 8, 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(value);
+    }
+
+    // -1 if not only digits
+    private static int digits(String value, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            n = n * 10 + c - '0';
+        }
+        return n;
+    }
+
+    // HH:MM:SS as written by DurationFormat, or seconds
+    private static long seconds(String value) {
+        String v = value.trim();
+        if (v.indexOf(':') < 0) {
+            return Long.parseLong(v);
+        }
+        String[] parts = v.split(":");
+        long seconds = 0;
+        for (String part : parts) {
+            seconds = seconds * 60 + Long.parseLong(part);
+        }
+        return seconds;
+    }
+
+    private abstract static class BaseReader implements Reader {
+        final BufferedReader in;
+        private final Counting counting;
+        long skipped = 0;
+        // Line or record number, for the messages
+        long line = 0;
+
+        BaseReader(BufferedReader in, Counting counting) {
+            this.in = in;
+            this.counting = counting;
+        }
+
+        void skip(String reason) {
+            if (skipped++ < LOGGED_ERRORS) {
+                log.warn("Time entry {} skipped: {}", line, reason);
+            }
+        }
+
+        @Override
+        public long skipped() {
+            return skipped;
+        }
+
+        @Override
+        public long position() {
+            return counting.count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class CsvReader extends BaseReader {
+        private final List<String> fields = new ArrayList<>();
+        // Value of a quoted field
+        private final StringBuilder field = new StringBuilder();
+        private int ticket = -1;
+        private int todo = -1;
+        private int day = -1;
+        private int seconds = -1;
+        private int duration = -1;
+        private int status = -1;
+        private int description = -1;
+
+        CsvReader(BufferedReader in, Counting counting) {
+            super(in, counting);
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            if (line == 0) {
+                header();
+            }
+            while (record()) {
+                try {
+                    Entry entry = entry(get(ticket), get(todo), get(day),
+                            seconds >= 0 ? seconds(get(seconds)) : seconds(get(duration)), get(status), get(description));
+                    if (entry != null) {
+                        return entry;
+                    }
+                    skip("no ticket or no time");
+                } catch (RuntimeException e) {
+                    skip(e.getMessage());
+                }
+            }
+            return null;
+        }
+
+        private void header() throws IOException {
+            if (!record()) {
+                return;
+            }
+            for (int i = 0; i < fields.size(); i++) {
+                String name = fields.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+                switch (name) {
+                    case "ticket" -> ticket = i;
+                    case "todo" -> todo = i;
+                    case "day" -> day = i;
+                    case "seconds" -> seconds = i;
+                    case "duration" -> duration = i;
+                    case "status" -> status = i;
+                    case "description" -> description = i;
+                    default -> {
+                        // other columns are ignored
+                    }
+                }
+            }
+            if (ticket < 0 || day < 0 || (seconds < 0 && duration < 0)) {
+                throw new IllegalArgumentException("CSV header must have ticket, day and seconds or duration columns.");
+            }
+        }
+
+        private String get(int column) {
+            return column >= 0 && column < fields.size() ? fields.get(column) : null;
+        }
+
+        // The fields of the next record, false at the end. Blank lines are skipped.
+        private boolean record() throws IOException {
+            do {
+                if (!parse()) {
+                    return false;
+                }
+            } while (fields.size() == 1 && fields.get(0).isEmpty());
+            return true;
+        }
+
+        // A quoted field may hold commas, quotes and new lines: the next lines are then read into it
+        private boolean parse() throws IOException {
+            fields.clear();
+            String text = in.readLine();
+            if (text == null) {
+                return false;
+            }
+            line++;
+            int i = 0;
+            while (true) {
+                if (i < text.length() && text.charAt(i) == '"') {
+                    field.setLength(0);
+                    i++;
+                    while (true) {
+                        int quote = text.indexOf('"', i);
+                        if (quote < 0) {
+                            field.append(text, i, text.length()).append('\n');
+                            text = in.readLine();
+                            if (text == null) {
+                                throw new IllegalArgumentException("Unterminated quoted field at record " + line + ".");
+                            }
+                            i = 0;
+                        } else if (quote + 1 < text.length() && text.charAt(quote + 1) == '"') {
+                            field.append(text, i, quote + 1);
+                            i = quote + 2;
+                        } else {
+                            field.append(text, i, quote);
+                            i = quote + 1;
+                            break;
+                        }
+                    }
+                    // Anything between the closing quote and the comma is ignored
+                    int comma = text.indexOf(',', i);
+                    fields.add(field.toString());
+                    if (comma < 0) {
+                        return true;
+                    }
+                    i = comma + 1;
+                } else {
+                    int comma = text.indexOf(',', i);
+                    fields.add(text.substring(i, comma < 0 ? text.length() : comma));
+                    if (comma < 0) {
+                        return true;
+                    }
+                    i = comma + 1;
+                }
+            }
+        }
+    }
+
+    private static final class JsonlReader extends BaseReader {
+
+        JsonlReader(BufferedReader in, Counting counting) {
+            super(in, counting);
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            String text;
+            while ((text = in.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                try {
+                    JsonNode node = TicketJson.MAPPER.readTree(text);
+                    Entry entry = entry(text(node, "ticket"), text(node, "todo"), text(node, "day"),
+                            node.hasNonNull("seconds") ? node.get("seconds").asLong()
+                                    : node.hasNonNull("duration") ? seconds(node.get("duration").asText()) : 0,
+                            text(node, "status"), text(node, "description"));
+                    if (entry != null) {
+                        return entry;
+                    }
+                    skip("no ticket or no time");
+                } catch (IOException | RuntimeException e) {
+                    skip(e.getMessage());
+                }
+            }
+            return null;
+        }
+
+        private static String text(JsonNode node, String field) {
+            JsonNode value = node.get(field);
+            return value == null || value.isNull() ? null : value.asText();
+        }
+    }
+
+    private static final class IcsReader extends BaseReader {
+        private static final DateTimeFormatter DATE = DateTimeFormatter.BASIC_ISO_DATE;
+        private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+        private static final Pattern WEEKS = Pattern.compile("([+-]?)P(\\d+)W");
+
+        // Entries of an event over several days still to return
+        private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+        // Properties of the current event: name -> value, name + ";" -> parameters
+        private final Map<String, String> event = new HashMap<>();
+        private boolean inEvent = false;
+        private String lookahead;
+
+        IcsReader(BufferedReader in, Counting counting) {
+            super(in, counting);
+        }
+
+        @Override
+        public Entry next() throws IOException {
+            String content;
+            while (pending.isEmpty() && (content = unfolded()) != null) {
+                if (content.equalsIgnoreCase("BEGIN:VEVENT")) {
+                    inEvent = true;
+                    event.clear();
+                } else if (content.equalsIgnoreCase("END:VEVENT")) {
+                    inEvent = false;
+                    try {
+                        event();
+                    } catch (RuntimeException e) {
+                        skip(e.getMessage());
+                    }
+                } else if (inEvent) {
+                    property(content);
+                }
+            }
+            return pending.poll();
+        }
+
+        // One content line, the folded lines joined
+        private String unfolded() throws IOException {
+            String current = lookahead != null ? lookahead : in.readLine();
+            lookahead = null;
+            if (current == null) {
+                return null;
+            }
+            StringBuilder builder = null;
+            String next;
+            while ((next = in.readLine()) != null && !next.isEmpty() && (next.charAt(0) == ' ' || next.charAt(0) == '\t')) {
+                if (builder == null) {
+                    builder = new StringBuilder(current);
+                }
+                builder.append(next, 1, next.length());
+            }
+            lookahead = next;
+            line++;
+            return builder == null ? current : builder.toString();
+        }
+
+        private void property(String content) {
+            int colon = -1;
+            boolean quoted = false;
+            for (int i = 0; i < content.length() && colon < 0; i++) {
+                char c = content.charAt(i);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == ':' && !quoted) {
+                    colon = i;
+                }
+            }
+            if (colon < 0) {
+                return;
+            }
+            String head = content.substring(0, colon);
+            int semicolon = head.indexOf(';');
+            String name = (semicolon < 0 ? head : head.substring(0, semicolon)).toUpperCase(Locale.ROOT);
+            event.put(name, content.substring(colon + 1));
+            if (semicolon >= 0) {
+                event.put(name + ";", head.substring(semicolon + 1));
+            }
+        }
+
+        private void event() {
+            String ticket = text("X-TIME-TRACKER-TICKET");
+            if (ticket == null) {
+                ticket = text("SUMMARY");
+            }
+            String todo = text("X-TIME-TRACKER-TODO");
+            String status = text("X-TIME-TRACKER-STATUS");
+            String description = text("DESCRIPTION");
+            String start = event.get("DTSTART");
+            if (start == null) {
+                skip("no DTSTART");
+                return;
+            }
+            String seconds = event.get("X-TIME-TRACKER-SECONDS");
+            if (seconds != null || isDate(start)) {
+                if (seconds == null) {
+                    skip("all-day event without X-TIME-TRACKER-SECONDS");
+                    return;
+                }
+                add(ticket, todo, date(start).toString(), Long.parseLong(seconds.trim()), status, description);
+                return;
+            }
+            ZonedDateTime from = dateTime(start, event.get("DTSTART;"));
+            ZonedDateTime to;
+            if (event.containsKey("DTEND")) {
+                to = dateTime(event.get("DTEND"), event.get("DTEND;"));
+            } else if (event.containsKey("DURATION")) {
+                to = from.plus(duration(event.get("DURATION").trim()));
+            } else {
+                skip("no DTEND nor DURATION");
+                return;
+            }
+            // Split at midnight, in the zone of the start
+            while (from.isBefore(to)) {
+                ZonedDateTime midnight = from.toLocalDate().plusDays(1).atStartOfDay(from.getZone());
+                ZonedDateTime end = midnight.isBefore(to) ? midnight : to;
+                add(ticket, todo, from.toLocalDate().toString(), Duration.between(from, end).getSeconds(), status, description);
+                from = end;
+            }
+        }
+
+        private void add(String ticket, String todo, String day, long seconds, String status, String description) {
+            Entry entry = entry(ticket, todo, day, seconds, status, description);
+            if (entry != null) {
+                pending.add(entry);
+            } else {
+                skip("no ticket or no time");
+            }
+        }
+
+        private String text(String name) {
+            String value = event.get(name);
+            return value == null ? null : unescape(value);
+        }
+
+        private static boolean isDate(String value) {
+            return value.trim().length() == 8;
+        }
+
+        private static LocalDate date(String value) {
+            return LocalDate.parse(value.trim().substring(0, 8), DATE);
+        }
+
+        // UTC with a Z, in TZID or else in the local zone
+        private static ZonedDateTime dateTime(String value, String parameters) {
+            String v = value.trim();
+            if (v.endsWith("Z")) {
+                return LocalDateTime.parse(v.substring(0, v.length() - 1), DATE_TIME).atZone(ZoneOffset.UTC);
+            }
+            ZoneId zone = ZoneId.systemDefault();
+            if (parameters != null) {
+                for (String parameter : parameters.split(";")) {
+                    if (parameter.toUpperCase(Locale.ROOT).startsWith("TZID=")) {
+                        try {
+                            zone = ZoneId.of(parameter.substring(5).replace("\"", ""));
+                        } catch (RuntimeException e) {
+                            // local zone
+                        }
+                    }
+                }
+            }
+            if (isDate(v)) {
+                return date(v).atStartOfDay(zone);
+            }
+            return LocalDateTime.parse(v, DATE_TIME).atZone(zone);
+        }
+
+        private static Duration duration(String value) {
+            Matcher weeks = WEEKS.matcher(value);
+            if (weeks.matches()) {
+                return Duration.ofDays(7 * Long.parseLong(weeks.group(2)));
+            }
+            try {
+                return Duration.parse(value);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Unknown duration " + value + ".");
+            }
+        }
+
+        private static String unescape(String value) {
+            if (value.indexOf('\\') < 0) {
+                return value;
+            }
+            StringBuilder builder = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' && i + 1 < value.length()) {
+                    char next = value.charAt(++i);
+                    builder.append(next == 'n' || next == 'N' ? '\n' : next);
+                } else {
+                    builder.append(c);
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    private static final class CsvWriter implements Writer {
+        private final BufferedWriter out;
+
+        CsvWriter(BufferedWriter out) throws IOException {
+            this.out = out;
+            out.write("ticket,todo,day,seconds,status,description\n");
+        }
+
+        @Override
+        public void write(Entry entry) throws IOException {
+            out.write(ReportEngine.csv(entry.ticket()));
+            out.write(',');
+            out.write(ReportEngine.csv(entry.todo()));
+            out.write(',');
+            out.write(entry.day().toString());
+            out.write(',');
+            out.write(Long.toString(entry.seconds()));
+            out.write(',');
+            out.write(entry.status() == null ? "" : entry.status().name());
+            out.write(',');
+            out.write(ReportEngine.csv(entry.description()));
+            out.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static final class JsonlWriter implements Writer {
+        private final BufferedWriter out;
+        private final JsonGenerator generator;
+
+        JsonlWriter(BufferedWriter out) throws IOException {
+            this.out = out;
+            this.generator = TicketJson.MAPPER.getFactory().createGenerator(out);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+        }
+
+        @Override
+        public void write(Entry entry) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("ticket", entry.ticket());
+            if (entry.todo() != null) {
+                generator.writeStringField("todo", entry.todo());
+            }
+            generator.writeStringField("day", entry.day().toString());
+            generator.writeNumberField("seconds", entry.seconds());
+            if (entry.status() != null) {
+                generator.writeStringField("status", entry.status().name());
+            }
+            if (entry.description() != null) {
+                generator.writeStringField("description", entry.description());
+            }
+            generator.writeEndObject();
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.flush();
+            out.write('\n');
+            generator.close();
+            out.close();
+        }
+    }
+
+    // RFC 5545: CRLF, lines folded at 75 bytes, text escaped
+    private static final class IcsWriter implements Writer {
+        private final BufferedWriter out;
+        private final String stamp = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+                .format(Instant.now().atZone(ZoneOffset.UTC));
+
+        IcsWriter(BufferedWriter out) throws IOException {
+            this.out = out;
+            line("BEGIN:VCALENDAR");
+            line("VERSION:2.0");
+            line("PRODID:-//time-tracker//time entries//EN");
+        }
+
+        @Override
+        public void write(Entry entry) throws IOException {
+            String day = DateTimeFormatter.BASIC_ISO_DATE.format(entry.day());
+            String summary = entry.ticket() + (entry.todo() == null ? "" : " / " + entry.todo());
+            line("BEGIN:VEVENT");
+            line("UID:" + escape(entry.ticket() + (entry.todo() == null ? "" : "/" + entry.todo()) + "/" + entry.day()) + "@time-tracker");
+            line("DTSTAMP:" + stamp);
+            line("DTSTART;VALUE=DATE:" + day);
+            line("DTEND;VALUE=DATE:" + DateTimeFormatter.BASIC_ISO_DATE.format(entry.day().plusDays(1)));
+            line("SUMMARY:" + escape(summary + " " + DurationFormat.format(entry.seconds())));
+            if (entry.description() != null) {
+                line("DESCRIPTION:" + escape(entry.description()));
+            }
+            line("TRANSP:TRANSPARENT");
+            line("X-TIME-TRACKER-TICKET:" + escape(entry.ticket()));
+            if (entry.todo() != null) {
+                line("X-TIME-TRACKER-TODO:" + escape(entry.todo()));
+            }
+            line("X-TIME-TRACKER-SECONDS:" + entry.seconds());
+            if (entry.status() != null) {
+                line("X-TIME-TRACKER-STATUS:" + entry.status().name());
+            }
+            line("END:VEVENT");
+        }
+
+        @Override
+        public void close() throws IOException {
+            line("END:VCALENDAR");
+            out.close();
+        }
+
+        private void line(String content) throws IOException {
+            int bytes = 0;
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                int size = c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 2 : 3;
+                // Never between the two chars of a surrogate pair
+                if (bytes + size > 75 && !Character.isLowSurrogate(c)) {
+                    out.write("\r\n ");
+                    bytes = 1;
+                }
+                out.write(c);
+                bytes += size;
+            }
+            out.write("\r\n");
+        }
+
+        private static String escape(String text) {
+            return text.replace("\\", "\\\\").replace(";", "\\;").replace(",", "\\,")
+                    .replace("\r\n", "\\n").replace("\n", "\\n");
+        }
+    }
+
+    private static final class Counting extends FilterInputStream {
+        private long count = 0;
+
+        Counting(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -1,14 +1,23 @@
 package com.github.ypiel.timetracker;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import static com.github.ypiel.timetracker.TicketTableModel.TICKET_TABLE_COLUMN_DELETE;
+import static com.github.ypiel.timetracker.DailyDurationsTableModel.DAILY_TABLE_COLUMN_DAY;
+import static com.github.ypiel.timetracker.DailyDurationsTableModel.DAILY_TABLE_COLUMN_DURATION;
+import static com.github.ypiel.timetracker.TicketTableModel.TICKET_TABLE_COLUMN_DESC;
+import static com.github.ypiel.timetracker.TicketTableModel.TICKET_TABLE_COLUMN_DURATION;
+import static com.github.ypiel.timetracker.TicketTableModel.TICKET_TABLE_COLUMN_ID;
+import static com.github.ypiel.timetracker.TicketTableModel.TICKET_TABLE_COLUMN_OPEN;
+import static com.github.ypiel.timetracker.TicketTableModel.TICKET_TABLE_COLUMN_ORDER;
+import static com.github.ypiel.timetracker.TicketTableModel.TICKET_TABLE_COLUMN_STATUS;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableCellRenderer;
-import javax.swing.table.TableModel;
 import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -18,78 +27,105 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
-import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class TimeTrackerApp extends JFrame {
-    private final static int TICKET_TABLE_COLUMN_ORDER = 0;
-    private final static int TICKET_TABLE_COLUMN_ID = 1;
-    private final static int TICKET_TABLE_COLUMN_DESC = 2;
-    private final static int TICKET_TABLE_COLUMN_STATUS = 3;
-    private final static int TICKET_TABLE_COLUMN_DURATION = 4;
-    private final static int TICKET_TABLE_COLUMN_OPEN = 5;
-    private final static int TICKET_TABLE_COLUMN_DELETE = 6;
-
     private final static int TODO_TABLE_COLUMN_STATUS = 0;
     private final static int TODO_TABLE_COLUMN_DESC = 1;
     private final static int TODO_TABLE_COLUMN_DURATION = 2;
     private final static int TODO_TABLE_COLUMN_DELETE = 3;
 
-    // Structures de données
-    private List<Ticket> tickets = new ArrayList<>();
-    private Ticket selectedTicket = null;
+    // Structures de données : les tickets sont dans le service, la fenêtre n'en est qu'un client
+    private final transient TrackingService service = new TrackingService();
+    private transient HttpApi api;
+    private final transient SearchIndex searchIndex = new SearchIndex(service);
+    // Tickets found by the search field, null to show them all
+    private transient Set<Ticket> searchMatches = null;
+    // Also read by the service listener, to know whose todos it reads for the EDT
+    private volatile Ticket selectedTicket = null;
     private TodoItem selectedTodo = null;
-    private boolean isPaused = false;
+    // Todos shown in the todo table, by row
+    private final transient List<TodoItem> todoRows = new ArrayList<>();
+    // Row of selectedTodo in the todo table
+    private int selectedTodoRow = -1;
+    // True while the tables are set to what the service tracks, the selection isn't sent back to it
+    private boolean following = false;
 
     // Composants GUI
     private JTable ticketTable;
+    private TicketTableModel ticketModel;
+    private transient TableRowSorter<TicketTableModel> ticketSorter;
     private JTable todoTable;
     private JTable ticketDailyDurationsTable;
     private JTable todoDailyDurationsTable;
+    private final DailyDurationsTableModel ticketDailyModel = new DailyDurationsTableModel();
+    private final DailyDurationsTableModel todoDailyModel = new DailyDurationsTableModel();
     private JButton pauseButton;
 
+    private JTextField searchField;
     private JCheckBox jcbTicket;
     private JCheckBox jcbTodo;
 
-    // Timers
-    private javax.swing.Timer durationTimer;
-
-    // Chemins des fichiers
-    private static final String SAVE_DIR = System.getProperty("time-tracker.dir", System.getProperty("user.home") + "/time-tracker");
-    private static final String SAVE_FILE = Paths.get(SAVE_DIR, "time-tracker.json").toString();
-
     public TimeTrackerApp() {
         setTitle("Time Tracker");
         setSize(1000, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         initGUI();
-        loadData();
-        updateTicketTable();
-        setupTimers();
+        service.addListener(new ServiceListener());
+        service.start();
+        searchIndex.start();
+        ticketModel.setTickets(service.tickets());
+        startApi();
+        new IdleMonitor(service).start();
+        // The durations only tick while the window shows them, the screen lock can't be seen from here
         addWindowListener(new WindowAdapter() {
+            public void windowOpened(WindowEvent e) {
+                service.watch(true);
+            }
+
+            public void windowIconified(WindowEvent e) {
+                service.watch(false);
+            }
+
+            public void windowDeiconified(WindowEvent e) {
+                service.watch(true);
+            }
+
             public void windowClosing(WindowEvent e) {
-                saveData();
+                if (api != null) {
+                    api.stop();
+                }
+                service.close();
             }
         });
     }
 
+    // The window still works without the API, when the port is taken by a daemon for instance
+    private void startApi() {
+        if (HttpApi.PORT <= 0) {
+            return;
+        }
+        try {
+            api = new HttpApi(service);
+            api.start();
+        } catch (IOException e) {
+            log.warn("Can't start the HTTP API on port {}.", HttpApi.PORT, e);
+            api = null;
+        }
+    }
+
     private void initGUI() {
         // Définir le layout
         setLayout(new BorderLayout());
@@ -121,14 +157,44 @@ public class TimeTrackerApp extends JFrame {
         JSplitPane bottomSplitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
                 new JScrollPane(ticketDailyDurationsTable), new JScrollPane(todoDailyDurationsTable));
 
+        // Période et sous-totaux des durées quotidiennes
+        JComboBox<DailyRange> dailyRange = new JComboBox<>(DailyRange.values());
+        dailyRange.addActionListener(e -> setDailyRange((DailyRange) dailyRange.getSelectedItem()));
+        JComboBox<DailyDurationsTableModel.Grouping> dailyGrouping = new JComboBox<>(DailyDurationsTableModel.Grouping.values());
+        dailyGrouping.addActionListener(e -> setDailyGrouping((DailyDurationsTableModel.Grouping) dailyGrouping.getSelectedItem()));
+        JPanel dailyMenu = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        dailyMenu.add(new JLabel("Range"));
+        dailyMenu.add(dailyRange);
+        dailyMenu.add(new JLabel("Subtotals"));
+        dailyMenu.add(dailyGrouping);
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.add(dailyMenu, BorderLayout.NORTH);
+        bottomPanel.add(bottomSplitPane, BorderLayout.CENTER);
+
         // Split pane principal (haut et bas)
-        JSplitPane mainSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, topSplitPane, bottomSplitPane);
+        JSplitPane mainSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, topSplitPane, bottomPanel);
+
+        // Search as you type, the query runs on the search thread
+        searchField = new JTextField(20);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                search();
+            }
+        });
 
         // Checkbox to filter the tickets
         jcbTicket = new JCheckBox("Hide Done Tickets");
         jcbTicket.setSelected(true);
         jcbTicket.addActionListener(e -> {
-            updateTicketTable();
+            filterTickets();
         });
 
         // Checkbox to filter the todos
@@ -144,6 +210,20 @@ public class TimeTrackerApp extends JFrame {
         // join pauseButton and jcbTicket in a same panel
         JPanel bottomMenu = new JPanel();
         bottomMenu.setLayout(new FlowLayout(FlowLayout.RIGHT));
+        bottomMenu.add(new JLabel("Search"));
+        bottomMenu.add(searchField);
+        JButton archiveButton = new JButton("Archive...");
+        archiveButton.addActionListener(e -> new ArchiveDialog(this, service.archive(), service::contains, this::reopenTicket).setVisible(true));
+        bottomMenu.add(archiveButton);
+        JButton reportButton = new JButton("Report...");
+        reportButton.addActionListener(e -> new ReportDialog(this, service).setVisible(true));
+        bottomMenu.add(reportButton);
+        JButton importButton = new JButton("Import...");
+        importButton.addActionListener(e -> importEntries());
+        bottomMenu.add(importButton);
+        JButton exportButton = new JButton("Export...");
+        exportButton.addActionListener(e -> exportEntries());
+        bottomMenu.add(exportButton);
         bottomMenu.add(pauseButton);
         bottomMenu.add(jcbTicket);
         bottomMenu.add(jcbTodo);
@@ -156,22 +236,30 @@ public class TimeTrackerApp extends JFrame {
     }
 
     private void setupTicketTable() {
-        String[] columns = {"Order", "ID", "Description", "Status", "Duration", "Open", "Delete"};
-        DefaultTableModel model = new DefaultTableModel(columns, 0) {
-            public boolean isCellEditable(int row, int column) {
-                // Permettre l'édition des colonnes ID et Description
-                return column == TICKET_TABLE_COLUMN_ORDER ||
-                        column == TICKET_TABLE_COLUMN_ID || column == TICKET_TABLE_COLUMN_DESC ||
-                        column == TICKET_TABLE_COLUMN_STATUS || column == TICKET_TABLE_COLUMN_OPEN ||
-                        column == TICKET_TABLE_COLUMN_DELETE;
-            }
-        };
+        TicketTableModel model = new TicketTableModel(this::editTicket);
+        ticketModel = model;
         ticketTable.setModel(model);
 
-        // Ajouter une ligne vide pour un nouveau ticket
-        model.addRow(new Object[]{0, "", "", Status.New, "", "", ""});
+        // Sorter et filtre créés une seule fois, les lignes modifiées sont triées/filtrées au fil de l'eau
+        ticketSorter = new TableRowSorter<>(model);
+        ticketSorter.setComparator(TICKET_TABLE_COLUMN_ORDER, Comparator.comparingInt((Integer o) -> o));
+        ticketSorter.setSortsOnUpdates(true);
+        ticketSorter.setRowFilter(new RowFilter<>() {
+            @Override
+            public boolean include(Entry<? extends TicketTableModel, ? extends Integer> entry) {
+                Ticket ticket = entry.getModel().getTicket(entry.getIdentifier());
+                // The selected ticket stays, hiding it would stop its tracking
+                if (ticket == null || ticket == selectedTicket) {
+                    return true;
+                }
+                return (searchMatches == null || searchMatches.contains(ticket))
+                        && !(jcbTicket.isSelected() && ticket.getStatus() == Status.Done);
+            }
+        });
+        ticketTable.setRowSorter(ticketSorter);
 
         ticketTable.getColumnModel().getColumn(TICKET_TABLE_COLUMN_ORDER).setCellEditor(new IntegerEditor());
+        ticketTable.getColumnModel().getColumn(TICKET_TABLE_COLUMN_DURATION).setCellRenderer(new DurationRenderer());
 
         // Renderer et éditeur pour les boutons Open et Delete
         ticketTable.getColumn("Open").setCellRenderer(new ButtonRenderer());
@@ -180,19 +268,21 @@ public class TimeTrackerApp extends JFrame {
         ticketTable.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
-                int row = ticketTable.convertRowIndexToModel(ticketTable.rowAtPoint(e.getPoint()));
+                int viewRow = ticketTable.rowAtPoint(e.getPoint());
+                if (viewRow < 0) {
+                    return;
+                }
+                int row = ticketTable.convertRowIndexToModel(viewRow);
                 int col = ticketTable.columnAtPoint(e.getPoint());
-
-                String toRemove = (String) model.getValueAt(row, TICKET_TABLE_COLUMN_ID);
+                Ticket ticket = model.getTicket(row);
+                if (ticket == null) {
+                    return;
+                }
 
                 if (col == TICKET_TABLE_COLUMN_DELETE) { // Check if "Label" column is clicked
-                    tickets.stream().filter(t -> t.getId().equals(toRemove)).findAny().ifPresent(o -> {
-                        tickets.remove(o);
-                        model.removeRow(row);
-                    });
-
+                    service.deleteTicket(ticket);
                 } else if (col == TICKET_TABLE_COLUMN_OPEN) {
-                    String url = (String) model.getValueAt(row, TICKET_TABLE_COLUMN_ID);
+                    String url = ticket.getId();
                     if (url != null && url.startsWith("http")) {
                         try {
                             Desktop.getDesktop().browse(new URI(url));
@@ -232,52 +322,32 @@ public class TimeTrackerApp extends JFrame {
 
                 put("AddTicket", new AbstractAction() {
                     public void actionPerformed(ActionEvent e) {
-                        int row = ticketTable.convertRowIndexToModel(ticketTable.getSelectedRow());
+                        int viewRow = ticketTable.getSelectedRow();
+                        // Les tickets existants sont modifiés directement par editTicket
+                        if (viewRow < 0 || !model.isDraft(ticketTable.convertRowIndexToModel(viewRow))) {
+                            return;
+                        }
 
-                        // if (row == ticketTable.getRowCount() - 1) {
-                        int order = (Integer) model.getValueAt(row, TICKET_TABLE_COLUMN_ORDER);
+                        int order = model.getDraftOrder();
 
                         if (order <= 0) {
                             JOptionPane.showMessageDialog(null, "Ticket order must be higher than 0.", "Warning", JOptionPane.WARNING_MESSAGE);
                             return;
                         }
 
-                        String id = (String) model.getValueAt(row, TICKET_TABLE_COLUMN_ID);
-                        String description = (String) model.getValueAt(row, TICKET_TABLE_COLUMN_DESC);
-                        Status status = (Status) model.getValueAt(row, TICKET_TABLE_COLUMN_STATUS);
-
-                        if (id != null && !id.trim().isEmpty() && row == ticketTable.getRowCount() - 1) {
-                            Optional<Ticket> exists = tickets.stream().filter(t -> t.getId().equals(id)).findAny();
-                            if (exists.isPresent()) {
-                                JOptionPane.showMessageDialog(null, "Ticket with ID " + id + " already exists.", "Warning", JOptionPane.WARNING_MESSAGE);
-                                return;
+                        String id = model.getDraftId();
+                        String description = model.getDraftDescription();
+                        Status status = model.getDraftStatus();
+
+                        if (id != null && !id.trim().isEmpty()) {
+                            try {
+                                // The row is added when the service notifies the new ticket
+                                service.createTicket(order, id, description, status);
+                                model.resetDraft();
+                            } catch (IllegalArgumentException ex) {
+                                JOptionPane.showMessageDialog(null, ex.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
                             }
-
-
-                            Ticket ticket = new Ticket(order, id.trim(), description != null ? description.trim() : "", status);
-                            tickets.add(ticket);
-                            model.insertRow(model.getRowCount() - 1, new Object[]{order, id.trim(), description, status, "00:00:00", "Open", "Delete"});
-                            model.setValueAt(0, model.getRowCount() - 1, TICKET_TABLE_COLUMN_ORDER);
-                            model.setValueAt("", model.getRowCount() - 1, TICKET_TABLE_COLUMN_ID);
-                            model.setValueAt("", model.getRowCount() - 1, TICKET_TABLE_COLUMN_DESC);
-                            model.setValueAt(Status.New, model.getRowCount() - 1, TICKET_TABLE_COLUMN_STATUS);
-                        } else {
-                            Ticket selected = tickets.get(row);
-
-                            if (!id.equals(selected.getId())) {
-                                Optional<Ticket> exists = tickets.stream().filter(t -> t.getId().equals(id)).findAny();
-                                if (exists.isPresent()) {
-                                    JOptionPane.showMessageDialog(null, "Ticket with ID " + id + " already exists.", "Warning", JOptionPane.WARNING_MESSAGE);
-                                    return;
-                                }
-                            }
-
-                            selected.setOrder(order);
-                            selected.setId(id);
-                            selected.setDescription(description);
-                            selected.setStatus(status);
                         }
-                        //}
                     }
                 });
 
@@ -285,33 +355,46 @@ public class TimeTrackerApp extends JFrame {
         ticketTable.getSelectionModel().
                 addListSelectionListener(e -> {
                     if (!e.getValueIsAdjusting()) {
-                        int index = ticketTable.convertRowIndexToModel(ticketTable.getSelectedRow());
-                        if (index >= 0 && index < tickets.size()) {
-                            selectedTicket = tickets.get(index);
+                        int viewRow = ticketTable.getSelectedRow();
+                        Ticket ticket = viewRow < 0 ? null : model.getTicket(ticketTable.convertRowIndexToModel(viewRow));
+                        if (ticket == selectedTicket) {
+                            // Rows moved by a change of another ticket
+                            return;
+                        }
+                        if (ticket != null) {
+                            selectedTicket = ticket;
                             selectedTodo = null;
+                            selectedTodoRow = -1;
                             updateTodoTable();
                             updateTicketDailyDurationsTable();
                             updateTodoDailyDurationsTable();
                         } else {
                             selectedTicket = null;
                             selectedTodo = null;
+                            selectedTodoRow = -1;
                             clearTodoTable();
                             clearTicketDailyDurationsTable();
                             clearTodoDailyDurationsTable();
                         }
+                        trackSelection();
                     }
                 });
+    }
 
-        // Listener pour mettre à jour le statut du ticket
-        model.addTableModelListener(e -> {
-            int row = e.getFirstRow();
-            int column = e.getColumn();
-            if (column == TICKET_TABLE_COLUMN_STATUS && row >= 0 && row < tickets.size()) {
-                Ticket ticket = tickets.get(row);
-                Status newStatus = (Status) model.getValueAt(row, column);
-                ticket.setStatus(newStatus);
-            }
-        });
+    // Modification d'un ticket existant depuis la table
+    private boolean editTicket(Ticket ticket, int column, Object value) {
+        try {
+            return switch (column) {
+                case TICKET_TABLE_COLUMN_ORDER -> service.setOrder(ticket, value == null ? 0 : (Integer) value);
+                case TICKET_TABLE_COLUMN_ID -> service.rename(ticket, (String) value);
+                case TICKET_TABLE_COLUMN_DESC -> service.setDescription(ticket, (String) value);
+                case TICKET_TABLE_COLUMN_STATUS -> service.setStatus(ticket, (Status) value);
+                default -> false;
+            };
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
     }
 
     private void setupTodoTable() {
@@ -329,17 +412,18 @@ public class TimeTrackerApp extends JFrame {
 
         // Renderer et éditeur pour le bouton Delete
         todoTable.getColumn("Delete").setCellRenderer(new ButtonRenderer());
+        todoTable.getColumn("Duration").setCellRenderer(new DurationRenderer());
         todoTable.addMouseListener(new MouseAdapter() {
             @Override
             public void mouseClicked(MouseEvent e) {
                 int row = todoTable.rowAtPoint(e.getPoint());
                 int col = todoTable.columnAtPoint(e.getPoint());
 
-                if (col == TODO_TABLE_COLUMN_DELETE) {
-                    int selectedTicketRow = ticketTable.getSelectedRow();
-                    if (selectedTicket != null && selectedTicketRow >= 0 && selectedTicketRow < tickets.size()) {
-                        selectedTicket.getTodoItems().remove(row);
-                        updateTodoTable();
+                if (col == TODO_TABLE_COLUMN_DELETE && selectedTicket != null && row >= 0 && row < todoRows.size()) {
+                    try {
+                        service.deleteTodo(selectedTicket, todoRows.get(row));
+                    } catch (IllegalArgumentException ex) {
+                        log.debug("Todo already deleted.", ex);
                     }
                 }
             }
@@ -358,11 +442,12 @@ public class TimeTrackerApp extends JFrame {
                     Status status = (Status) model.getValueAt(row, TODO_TABLE_COLUMN_STATUS);
                     String description = (String) model.getValueAt(row, TODO_TABLE_COLUMN_DESC);
                     if (description != null && !description.trim().isEmpty()) {
-                        TodoItem todo = new TodoItem(description.trim(), status);
-                        selectedTicket.getTodoItems().add(todo);
-                        model.insertRow(model.getRowCount() - 1, new Object[]{status, description, "00:00:00", "Delete"});
-                        model.setValueAt(Status.New, model.getRowCount() - 1, TODO_TABLE_COLUMN_STATUS);
-                        model.setValueAt("", model.getRowCount() - 1, TODO_TABLE_COLUMN_DESC);
+                        try {
+                            // The todo table is rebuilt when the service notifies the change
+                            service.addTodo(selectedTicket, description, status);
+                        } catch (IllegalArgumentException ex) {
+                            JOptionPane.showMessageDialog(null, ex.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
+                        }
                     }
                 }
             }
@@ -372,13 +457,16 @@ public class TimeTrackerApp extends JFrame {
         todoTable.getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
                 int index = todoTable.getSelectedRow();
-                if (selectedTicket != null && index >= 0 && index < selectedTicket.getTodoItems().size()) {
-                    selectedTodo = selectedTicket.getTodoItems().get(index);
+                if (selectedTicket != null && index >= 0 && index < todoRows.size()) {
+                    selectedTodo = todoRows.get(index);
+                    selectedTodoRow = index;
                     updateTodoDailyDurationsTable();
                 } else {
                     selectedTodo = null;
+                    selectedTodoRow = -1;
                     clearTodoDailyDurationsTable();
                 }
+                trackSelection();
             }
         });
 
@@ -386,269 +474,426 @@ public class TimeTrackerApp extends JFrame {
         model.addTableModelListener(e -> {
             int row = e.getFirstRow();
             int column = e.getColumn();
-            if (column == TODO_TABLE_COLUMN_STATUS && selectedTicket != null && row >= 0 && row < selectedTicket.getTodoItems().size()) {
-                TodoItem todo = selectedTicket.getTodoItems().get(row);
-                Status newStatus = (Status) model.getValueAt(row, column);
-                todo.setStatus(newStatus);
+            if (e.getType() == TableModelEvent.UPDATE && column == TODO_TABLE_COLUMN_STATUS && selectedTicket != null
+                    && row >= 0 && row < todoRows.size()) {
+                try {
+                    service.setTodoStatus(selectedTicket, todoRows.get(row), (Status) model.getValueAt(row, column));
+                } catch (IllegalArgumentException ex) {
+                    log.debug("Todo already deleted.", ex);
+                }
             }
         });
     }
 
     private void setupTicketDailyDurationsTable() {
-        String[] columns = {"Jour", "Duration"};
-        DefaultTableModel model = new DefaultTableModel(columns, 0) {
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
-        ticketDailyDurationsTable.setModel(model);
+        setupDailyDurationsTable(ticketDailyDurationsTable, ticketDailyModel);
     }
 
     private void setupTodoDailyDurationsTable() {
-        String[] columns = {"Jour", "Duration"};
-        DefaultTableModel model = new DefaultTableModel(columns, 0) {
-            public boolean isCellEditable(int row, int column) {
-                return false;
+        setupDailyDurationsTable(todoDailyDurationsTable, todoDailyModel);
+    }
+
+    // Les lignes de sous-total sont en gras
+    private static void setupDailyDurationsTable(JTable table, DailyDurationsTableModel model) {
+        table.setModel(model);
+        table.getColumnModel().getColumn(DAILY_TABLE_COLUMN_DAY).setCellRenderer(new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                c.setFont(model.isSubtotal(row) ? c.getFont().deriveFont(Font.BOLD) : table.getFont());
+                return c;
             }
-        };
-        todoDailyDurationsTable.setModel(model);
+        });
+        table.getColumnModel().getColumn(DAILY_TABLE_COLUMN_DURATION).setCellRenderer(new DurationRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                c.setFont(model.isSubtotal(row) ? c.getFont().deriveFont(Font.BOLD) : table.getFont());
+                return c;
+            }
+        });
     }
 
-    private void updateTicketTable() {
-        DefaultTableModel model = (DefaultTableModel) ticketTable.getModel();
-        model.setRowCount(0);
-        for (Ticket ticket : tickets) {
+    // Période et regroupement des deux tables de durées quotidiennes
+    private void setDailyRange(DailyRange range) {
+        int firstDay = range.firstDay((int) LocalDate.now().toEpochDay());
+        ticketDailyModel.setRange(firstDay, Integer.MAX_VALUE);
+        todoDailyModel.setRange(firstDay, Integer.MAX_VALUE);
+    }
+
+    private void setDailyGrouping(DailyDurationsTableModel.Grouping grouping) {
+        ticketDailyModel.setGrouping(grouping);
+        todoDailyModel.setGrouping(grouping);
+    }
+
+    // "Hide Done Tickets" a changé, seul le filtre est réévalué
+    private void filterTickets() {
+        ticketSorter.sort();
+    }
 
-            if (jcbTicket.isSelected() && ticket.status == Status.Done) {
-                continue;
+    // The result is only used if the field still has the same text, a later query is on its way otherwise
+    private void search() {
+        String query = searchField.getText();
+        searchIndex.search(query, matches -> SwingUtilities.invokeLater(() -> {
+            if (query.equals(searchField.getText())) {
+                searchMatches = matches;
+                ticketSorter.sort();
             }
+        }));
+    }
 
-            model.addRow(new Object[]{ticket.getOrder(), ticket.getId(), ticket.getDescription(), ticket.getStatus(),
-                    formatDuration(ticket.getDuration()), "Open", "Delete"});
+    // A ticket changed, it may now match the search or not anymore
+    private void searchAgain() {
+        if (searchMatches != null) {
+            search();
         }
-        model.addRow(new Object[]{0, "", "", Status.New, "", "", ""});
-
-        TableRowSorter<TableModel> sorter = new TableRowSorter<>(ticketTable.getModel());
-        sorter.setComparator(0, Comparator.comparingInt((Integer o) -> o));
+    }
 
-        ticketTable.setRowSorter(sorter);
+    // The selection is what the service tracks, unless the tables are only following it
+    private void trackSelection() {
+        if (following) {
+            return;
+        }
+        try {
+            service.track(selectedTicket, selectedTodo);
+        } catch (IllegalArgumentException e) {
+            // Deleted by another client, its notification is on its way
+            log.debug("Can't track the selection.", e);
+        }
     }
 
     private void updateTodoTable() {
-        DefaultTableModel model = (DefaultTableModel) todoTable.getModel();
-        model.setRowCount(0);
-        if (selectedTicket != null) {
-            for (TodoItem todo : selectedTicket.getTodoItems()) {
-                if (jcbTodo.isSelected() && todo.status == Status.Done) {
-                    continue;
+        Ticket ticket = selectedTicket;
+        updateTodoTable(ticket == null ? null : service.read(() -> new ArrayList<>(ticket.getTodoItems())));
+    }
+
+    // The todos of the selected ticket as the service had them, null without selected ticket.
+    // The selected todo stays selected if it is still shown.
+    private void updateTodoTable(List<TodoItem> todos) {
+        TodoItem todo = selectedTodo;
+        boolean wasFollowing = following;
+        following = true;
+        try {
+            DefaultTableModel model = (DefaultTableModel) todoTable.getModel();
+            model.setRowCount(0);
+            todoRows.clear();
+            if (todos != null) {
+                for (TodoItem item : todos) {
+                    if (jcbTodo.isSelected() && item.getStatus() == Status.Done) {
+                        continue;
+                    }
+                    todoRows.add(item);
+                    model.addRow(new Object[]{item.getStatus(), item.getDescription(), item.getDuration(), "Delete"});
                 }
-                model.addRow(new Object[]{todo.getStatus(), todo.getDescription(), formatDuration(todo.getDuration()), "Delete"});
+                model.addRow(new Object[]{Status.New, "", "", ""});
+            }
+            int row = TicketIndex.identityIndexOf(todoRows, todo);
+            if (row >= 0) {
+                todoTable.setRowSelectionInterval(row, row);
             }
-            model.addRow(new Object[]{Status.New, "", "", ""});
+        } finally {
+            following = wasFollowing;
+        }
+        if (todo != null && selectedTodo == null) {
+            trackSelection();
         }
     }
 
     private void clearTodoTable() {
         DefaultTableModel model = (DefaultTableModel) todoTable.getModel();
         model.setRowCount(0);
+        todoRows.clear();
     }
 
     private void updateTicketDailyDurationsTable() {
-        DefaultTableModel model = (DefaultTableModel) ticketDailyDurationsTable.getModel();
-        model.setRowCount(0);
-        if (selectedTicket != null) {
-            Map<String, Long> durationsPerDay = selectedTicket.getDurationsPerDay();
-            for (Map.Entry<String, Long> entry : durationsPerDay.entrySet()) {
-                model.addRow(new Object[]{entry.getKey(), formatDuration(entry.getValue())});
-            }
-        }
+        Ticket ticket = selectedTicket;
+        ticketDailyModel.setDurations(ticket != null ? service.read(() -> ticket.getDurationsPerDay().copy()) : null);
     }
 
     private void clearTicketDailyDurationsTable() {
-        DefaultTableModel model = (DefaultTableModel) ticketDailyDurationsTable.getModel();
-        model.setRowCount(0);
+        ticketDailyModel.setDurations(null);
     }
 
     private void updateTodoDailyDurationsTable() {
-        DefaultTableModel model = (DefaultTableModel) todoDailyDurationsTable.getModel();
-        model.setRowCount(0);
-        if (selectedTodo != null) {
-            Map<String, Long> durationsPerDay = selectedTodo.getDurationsPerDay();
-            for (Map.Entry<String, Long> entry : durationsPerDay.entrySet()) {
-                model.addRow(new Object[]{entry.getKey(), formatDuration(entry.getValue())});
-            }
-        }
+        TodoItem todo = selectedTodo;
+        todoDailyModel.setDurations(todo != null ? service.read(() -> todo.getDurationsPerDay().copy()) : null);
     }
 
     private void clearTodoDailyDurationsTable() {
-        DefaultTableModel model = (DefaultTableModel) todoDailyDurationsTable.getModel();
-        model.setRowCount(0);
+        todoDailyModel.setDurations(null);
     }
 
-    private void setupTimers() {
-        final AtomicLong last = new AtomicLong(System.currentTimeMillis());
-        durationTimer = new javax.swing.Timer(1000, e -> {
-            final long current = System.currentTimeMillis();
-            final long elapsedSecond = (current - last.get()) / 1000;
-            last.set(current);
-            if (!isPaused) {
-                String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
-                if (selectedTicket != null) {
-                    selectedTicket.incrementDuration(elapsedSecond);
-                    selectedTicket.incrementDurationForDay(today, elapsedSecond);
-                    updateTicketDuration();
-                    updateTicketDailyDurationsTable();
-                }
-                if (selectedTodo != null) {
-                    selectedTodo.incrementDuration(elapsedSecond);
-                    selectedTodo.incrementDurationForDay(today, elapsedSecond);
-                    updateTodoDuration();
-                    updateTodoDailyDurationsTable();
-                }
-            }
-        });
-        durationTimer.start();
-
-        // Timer pour sauvegarder les données chaque minute
-        new javax.swing.Timer(60000, e -> saveData()).start();
-    }
-
-    private void updateTicketDuration() {
-        int index = tickets.indexOf(selectedTicket);
-        if (index >= 0) {
-            DefaultTableModel model = (DefaultTableModel) ticketTable.getModel();
-            model.setValueAt(formatDuration(selectedTicket.getDuration()), index, TICKET_TABLE_COLUMN_DURATION);
+    // Seconds credited by the service, only the duration cell and the day row that changed are repainted.
+    // The seconds of the day were read by the listener, the EDT doesn't wait for the service lock.
+    private void showCredit(Ticket ticket, TodoItem todo, int day, long ticketSeconds, long todoSeconds) {
+        ticketModel.durationChanged(ticket);
+        if (ticket == selectedTicket) {
+            ticketDailyModel.dayChanged(day, ticketSeconds);
+        }
+        if (todo != null && todo == selectedTodo) {
+            updateTodoDuration();
+            todoDailyModel.dayChanged(day, todoSeconds);
         }
     }
 
     private void updateTodoDuration() {
         if (selectedTicket != null && selectedTodo != null) {
-            int index = selectedTicket.getTodoItems().indexOf(selectedTodo);
-            if (index >= 0) {
+            int index = selectedTodoRow;
+            if (index >= 0 && index < todoTable.getRowCount()) {
                 DefaultTableModel model = (DefaultTableModel) todoTable.getModel();
-                model.setValueAt(formatDuration(selectedTodo.getDuration()), index, TODO_TABLE_COLUMN_DURATION);
+                model.setValueAt(selectedTodo.getDuration(), index, TODO_TABLE_COLUMN_DURATION);
             }
         }
     }
 
     private void togglePause() {
-        isPaused = !isPaused;
-        if (isPaused) {
-            pauseButton.setText("Reprendre");
-            pauseButton.setBackground(Color.YELLOW);
-        } else {
+        // The button is updated when the service notifies the change
+        service.setRunning(!service.isRunning());
+    }
+
+    private void showRunning(boolean running) {
+        if (running) {
             pauseButton.setText("Pause");
             pauseButton.setBackground(Color.GREEN.darker());
+        } else {
+            pauseButton.setText("Reprendre");
+            pauseButton.setBackground(Color.YELLOW);
+        }
+    }
+
+    // Select what the service tracks, which another client may have changed
+    private void showTracking(Ticket ticket, TodoItem todo, boolean running) {
+        showRunning(running);
+        if (ticket == selectedTicket && todo == selectedTodo) {
+            return;
+        }
+        following = true;
+        try {
+            int row = ticket == null ? -1 : ticketModel.rowOf(ticket);
+            int viewRow = row < 0 ? -1 : ticketTable.convertRowIndexToView(row);
+            if (viewRow < 0) {
+                ticketTable.clearSelection();
+            } else {
+                ticketTable.setRowSelectionInterval(viewRow, viewRow);
+            }
+            int todoRow = selectedTicket == ticket ? TicketIndex.identityIndexOf(todoRows, todo) : -1;
+            if (todoRow < 0) {
+                todoTable.clearSelection();
+            } else {
+                todoTable.setRowSelectionInterval(todoRow, todoRow);
+            }
+        } finally {
+            following = false;
         }
     }
 
-    private String formatDuration(long seconds) {
-        long hrs = seconds / 3600;
-        long mins = (seconds % 3600) / 60;
-        long secs = seconds % 60;
-        return String.format("%02d:%02d:%02d", hrs, mins, secs);
+    // Many tickets changed, the selection is set back to the tracked ticket/todo
+    private void reloadTickets(List<Ticket> tickets, Ticket ticket, TodoItem todo, boolean running) {
+        following = true;
+        try {
+            selectedTicket = null;
+            selectedTodo = null;
+            ticketModel.setTickets(tickets);
+        } finally {
+            following = false;
+        }
+        showTracking(ticket, todo, running);
     }
 
-    private void saveData() {
+    // Put an archived ticket back in the tickets list, its archived copy is dropped at the next archiving
+    private void reopenTicket(String id) {
         try {
-            log.info("Save time-tracker data to {}.", SAVE_FILE);
-            Files.createDirectories(Paths.get(SAVE_DIR));
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(new File(SAVE_FILE), tickets);
-            // Copier dans un fichier avec le jour de l'année
-            String dayOfYear = String.valueOf(LocalDate.now().getDayOfYear());
-            String backupFile = SAVE_DIR + "/time-tracker-" + dayOfYear + ".json";
-            Files.copy(Paths.get(SAVE_FILE), Paths.get(backupFile), StandardCopyOption.REPLACE_EXISTING);
+            service.reopen(id);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
         } catch (IOException e) {
-            e.printStackTrace();
+            log.error("Can't reopen the ticket {}.", id, e);
+            JOptionPane.showMessageDialog(this, "Can't reopen the ticket " + id + ": " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
-    private void loadData() {
-        log.info("time-tracker data loaded from {}.", SAVE_FILE);
-        File file = new File(SAVE_FILE);
-        if (file.exists()) {
-            try {
-                ObjectMapper mapper = new ObjectMapper();
-                tickets = mapper.readValue(file, new TypeReference<List<Ticket>>() {
-                });
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    // Time entries read on a worker thread, the service applies them by batches and the tables follow its notifications.
+    // Cancel only hides the progress, the entries applied so far are already in the tickets.
+    private void importEntries() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import time entries (.csv, .jsonl, .ics)");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        TimeEntries.Format format;
+        long size;
+        try {
+            format = TimeEntries.Format.of(file);
+            size = Math.max(1, Files.size(file));
+        } catch (IllegalArgumentException | IOException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
+            return;
         }
+        ProgressMonitor monitor = new ProgressMonitor(this, "Import " + file.getFileName(), "", 0, 100);
+        new SwingWorker<TrackingService.ImportResult, TrackingService.ImportResult>() {
+            @Override
+            protected TrackingService.ImportResult doInBackground() throws IOException {
+                try (TimeEntries.Reader reader = TimeEntries.reader(Files.newInputStream(file), format)) {
+                    return service.importEntries(reader, r -> publish(r));
+                }
+            }
+
+            @Override
+            protected void process(List<TrackingService.ImportResult> chunks) {
+                TrackingService.ImportResult last = chunks.get(chunks.size() - 1);
+                monitor.setProgress((int) Math.min(99, last.bytes() * 100 / size));
+                monitor.setNote(last.entries() + " entries");
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                try {
+                    TrackingService.ImportResult r = get();
+                    JOptionPane.showMessageDialog(TimeTrackerApp.this, r.entries() + " time entries imported ("
+                            + DurationFormat.format(r.seconds()) + "), " + r.tickets() + " tickets and " + r.todos()
+                            + " todos created, " + r.skipped() + " skipped.", "Import", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    log.error("Can't import {}.", file, e.getCause());
+                    JOptionPane.showMessageDialog(TimeTrackerApp.this, "Can't import " + file + ": " + e.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
-    // Enum pour les statuts
-    public enum Status {
-        New,
-        In_Progress,
-        On_Hold,
-        Validation,
-        Done;
+    // All the time entries of a snapshot, written on a worker thread
+    private void exportEntries() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Export time entries (.csv, .jsonl, .ics)");
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        TimeEntries.Format format;
+        try {
+            format = TimeEntries.Format.of(file);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        List<Ticket> tickets = service.snapshot();
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                try (TimeEntries.Writer writer = TimeEntries.writer(Files.newOutputStream(file), format)) {
+                    return TimeEntries.export(tickets, LocalDate.MIN, LocalDate.MAX, writer);
+                }
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    JOptionPane.showMessageDialog(TimeTrackerApp.this, get() + " time entries exported to " + file + ".",
+                            "Export", JOptionPane.INFORMATION_MESSAGE);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    log.error("Can't export to {}.", file, e.getCause());
+                    JOptionPane.showMessageDialog(TimeTrackerApp.this, "Can't export to " + file + ": " + e.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }.execute();
     }
 
-    // Classes internes pour les modèles de données
-    @Data
-    static class Ticket {
-        private int order = 0;
-        private String id;
-        private String description;
-        private Status status;
-        private long duration; // en secondes
-        private Map<String, Long> durationsPerDay;
-        private List<TodoItem> todoItems;
+    // Notifications of the service, from whichever thread made the change: they are replayed on the EDT.
+    // What the EDT shows of a change is read here, with the lock held: the EDT doesn't wait for the service.
+    private class ServiceListener implements TrackingService.Listener {
+
+        @Override
+        public void ticketAdded(Ticket ticket) {
+            SwingUtilities.invokeLater(() -> {
+                ticketModel.ticketAdded(ticket);
+                searchAgain();
+            });
+        }
+
+        @Override
+        public void ticketRemoved(Ticket ticket) {
+            SwingUtilities.invokeLater(() -> ticketModel.ticketRemoved(ticket));
+        }
 
-        public Ticket() {
-            this.durationsPerDay = new HashMap<>();
-            this.todoItems = new ArrayList<>();
+        @Override
+        public void ticketChanged(Ticket ticket) {
+            // Only the todos of the selected ticket, the others may still be unparsed
+            List<TodoItem> todos = ticket == selectedTicket ? new ArrayList<>(ticket.getTodoItems()) : null;
+            SwingUtilities.invokeLater(() -> {
+                ticketModel.ticketChanged(ticket);
+                if (ticket == selectedTicket) {
+                    if (todos != null) {
+                        updateTodoTable(todos);
+                    } else {
+                        updateTodoTable();
+                    }
+                }
+                searchAgain();
+            });
         }
 
-        public Ticket(int order, String id, String description, Status status) {
-            this.order = order;
-            this.id = id;
-            this.description = description;
-            this.status = status;
-            this.duration = 0;
-            this.durationsPerDay = new HashMap<>();
-            this.todoItems = new ArrayList<>();
+        @Override
+        public void ticketsReloaded() {
+            List<Ticket> tickets = service.tickets();
+            Ticket ticket = service.trackedTicket();
+            TodoItem todo = service.trackedTodo();
+            boolean running = service.isRunning();
+            SwingUtilities.invokeLater(() -> {
+                reloadTickets(tickets, ticket, todo, running);
+                searchAgain();
+            });
         }
 
-        public void incrementDuration(long elapsedSeconds) {
-            duration += elapsedSeconds;
+        @Override
+        public void credited(Ticket ticket, TodoItem todo, int epochDay, long seconds) {
+            long ticketSeconds = ticket.getDurationsPerDay().get(epochDay);
+            long todoSeconds = todo == null ? 0 : todo.getDurationsPerDay().get(epochDay);
+            // Every second: the time it waits in the EDT queue is measured on the way
+            long posted = System.nanoTime();
+            SwingUtilities.invokeLater(() -> {
+                Metrics.EDT_DELAY.record(System.nanoTime() - posted);
+                showCredit(ticket, todo, epochDay, ticketSeconds, todoSeconds);
+            });
         }
 
-        public void incrementDurationForDay(String day, long elapsedSeconds) {
-            durationsPerDay.put(day, durationsPerDay.getOrDefault(day, 0L) + elapsedSeconds);
+        @Override
+        public void trackingChanged(Ticket ticket, TodoItem todo, boolean running) {
+            SwingUtilities.invokeLater(() -> showTracking(ticket, todo, running));
         }
     }
 
+    // Jours affichés dans les tables de durées quotidiennes, jusqu'à aujourd'hui
+    enum DailyRange {
+        ALL("All"), WEEK("7 days"), MONTH("30 days"), YEAR("This year");
 
-    @Data
-    static class TodoItem {
-        private Status status;
-        private String description;
-        private long duration; // en secondes
-        private Map<String, Long> durationsPerDay;
-
-        public TodoItem() {
-            this.durationsPerDay = new HashMap<>();
-        }
+        private final String label;
 
-        public TodoItem(String description, Status status) {
-            this.description = description;
-            this.status = status;
-            this.duration = 0;
-            this.durationsPerDay = new HashMap<>();
+        DailyRange(String label) {
+            this.label = label;
         }
 
-        public void incrementDuration(long elapsedSecond) {
-            duration += elapsedSecond;
+        int firstDay(int today) {
+            return switch (this) {
+                case ALL -> Integer.MIN_VALUE;
+                case WEEK -> today - 6;
+                case MONTH -> today - 29;
+                case YEAR -> (int) LocalDate.ofEpochDay(today).withDayOfYear(1).toEpochDay();
+            };
         }
 
-        public void incrementDurationForDay(String day, long elapsedSecond) {
-            durationsPerDay.put(day, durationsPerDay.getOrDefault(day, 0L) + elapsedSecond);
+        @Override
+        public String toString() {
+            return label;
         }
-
     }
 
     // Renderer pour les boutons
@@ -698,6 +943,13 @@ public class TimeTrackerApp extends JFrame {
     }
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new TimeTrackerApp().setVisible(true));
+        SwingUtilities.invokeLater(() -> {
+            try {
+                new TimeTrackerApp().setVisible(true);
+            } catch (IllegalStateException e) {
+                JOptionPane.showMessageDialog(null, e.getMessage(), "Time Tracker", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+            }
+        });
     }
 }
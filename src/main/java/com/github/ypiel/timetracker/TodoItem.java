@@ -0,0 +1,107 @@
+package com.github.ypiel.timetracker;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+// Like Ticket: no equals/hashCode on the lazy parts
+@Getter
+@Setter
+@ToString(onlyExplicitlyIncluded = true)
+class TodoItem {
+    private static final VarHandle DURATION;
+
+    static {
+        try {
+            DURATION = MethodHandles.lookup().findVarHandle(TodoItem.class, "duration", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @ToString.Include
+    private Status status;
+    @ToString.Include
+    private String description;
+    @ToString.Include
+    private volatile long duration; // en secondes, incremented atomically like Ticket.duration
+    private DailyDurations durationsPerDay;
+    // Days still in the month shards, shared with the ticket: historySlot is the index of the todo when it was read
+    @JsonIgnore
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.NONE)
+    private ShardedStore.History history;
+    @JsonIgnore
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.NONE)
+    private int historySlot;
+    // Time of the last change of status or description in ms, like Ticket.updated
+    @JsonIgnore
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private long updated;
+
+    public TodoItem() {
+        this.durationsPerDay = new DailyDurations();
+    }
+
+    public TodoItem(String description, Status status) {
+        this.description = description;
+        this.status = status;
+        this.duration = 0;
+        this.durationsPerDay = new DailyDurations();
+    }
+
+    public void incrementDuration(long elapsedSecond) {
+        DURATION.getAndAdd(this, elapsedSecond);
+    }
+
+    public synchronized TodoItem copy() {
+        TodoItem copy = new TodoItem(description, status);
+        copy.duration = duration;
+        copy.history = history;
+        copy.historySlot = historySlot;
+        copy.updated = updated;
+        if (history == null) {
+            copy.durationsPerDay = durationsPerDay.copy();
+        }
+        return copy;
+    }
+
+    public void incrementDurationForDay(int epochDay, long elapsedSecond) {
+        getDurationsPerDay().add(epochDay, elapsedSecond);
+    }
+
+    public synchronized DailyDurations getDurationsPerDay() {
+        if (history != null) {
+            durationsPerDay = history.todoDays(historySlot);
+            history = null;
+        }
+        return durationsPerDay;
+    }
+
+    // Like Ticket.durationsBetween
+    synchronized DailyDurations durationsBetween(int firstDay, int lastDay) {
+        if (history != null) {
+            return history.days(historySlot, firstDay, lastDay);
+        }
+        return getDurationsPerDay();
+    }
+
+    public synchronized void setDurationsPerDay(DailyDurations durationsPerDay) {
+        this.durationsPerDay = durationsPerDay;
+        this.history = null;
+    }
+
+    synchronized void setHistory(ShardedStore.History history, int slot) {
+        this.history = history;
+        this.historySlot = slot;
+    }
+
+}
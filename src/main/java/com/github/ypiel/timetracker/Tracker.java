@@ -0,0 +1,133 @@
+package com.github.ypiel.timetracker;
+
+import lombok.extern.slf4j.Slf4j;
+
+// Time accounting of the tracked ticket/todo from start, stop and switch events.
+// Intervals are measured with System.nanoTime, so wall clock corrections (NTP, manual changes) neither add
+// nor remove tracked time and a suspended computer doesn't count. The wall clock is only used, through an
+// anchor, to know on which day an interval happened; intervals crossing midnight are split between days.
+// settle() credits the whole seconds elapsed since the previous call and keeps the remainder, so how often
+// it is called (the service clock, a stalled thread) has no effect on the tracked time.
+// stopAt() stops at a past instant, the time already credited since then is taken back.
+@Slf4j
+class Tracker {
+
+    interface Listener {
+        void credit(Ticket ticket, TodoItem todo, int epochDay, long seconds);
+    }
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    // Above this difference between the anchored clock and the wall clock, the wall clock has jumped
+    private static final long MAX_WALL_CLOCK_DRIFT = 2000;
+
+    private final DayClock dayClock;
+    private final Listener listener;
+
+    private long anchorMillis;
+    private long anchorNanos;
+
+    private Ticket ticket;
+    private TodoItem todo;
+    private boolean running = false;
+    // nanoTime up to which the elapsed time has been credited
+    private long creditedUpTo;
+    // nanoTime since which the time goes to the current ticket/todo
+    private long trackedSince;
+
+    Tracker(DayClock dayClock, Listener listener) {
+        this.dayClock = dayClock;
+        this.listener = listener;
+        anchorNanos = System.nanoTime();
+        anchorMillis = System.currentTimeMillis();
+        creditedUpTo = anchorNanos;
+        trackedSince = anchorNanos;
+    }
+
+    // The time elapsed so far goes to the previous ticket/todo, the next one to these
+    void track(Ticket ticket, TodoItem todo) {
+        settle();
+        this.ticket = ticket;
+        this.todo = todo;
+        trackedSince = creditedUpTo;
+    }
+
+    void start() {
+        if (!running) {
+            running = true;
+            creditedUpTo = System.nanoTime();
+            trackedSince = creditedUpTo;
+        }
+    }
+
+    void stop() {
+        if (running) {
+            settle(true);
+            running = false;
+        }
+    }
+
+    // Stop as if it had been done at this nanoTime, not before the current ticket/todo was tracked
+    void stopAt(long at) {
+        if (!running) {
+            return;
+        }
+        settle(true);
+        running = false;
+        long from = Math.max(at, trackedSince);
+        long seconds = Math.max(0, creditedUpTo - from + NANOS_PER_SECOND / 2) / NANOS_PER_SECOND;
+        if (ticket != null && seconds > 0) {
+            long start = anchorMillis + (creditedUpTo - seconds * NANOS_PER_SECOND - anchorNanos) / NANOS_PER_MILLI;
+            credit(dayClock, start, seconds, ticket, todo, (t, td, day, part) -> listener.credit(t, td, day, -part));
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    void settle() {
+        settle(false);
+    }
+
+    private void settle(boolean stopping) {
+        long now = System.nanoTime();
+        reanchor(now);
+        if (!running || ticket == null) {
+            creditedUpTo = now;
+            return;
+        }
+        long elapsed = now - creditedUpTo;
+        long seconds = elapsed / NANOS_PER_SECOND;
+        if (stopping && elapsed % NANOS_PER_SECOND >= NANOS_PER_SECOND / 2) {
+            seconds++;
+        }
+        if (seconds > 0) {
+            long start = anchorMillis + (creditedUpTo - anchorNanos) / NANOS_PER_MILLI;
+            creditedUpTo += seconds * NANOS_PER_SECOND;
+            credit(dayClock, start, seconds, ticket, todo, listener);
+        }
+    }
+
+    // Credit the seconds starting at the given time, split between the days they belong to
+    static void credit(DayClock dayClock, long startMillis, long seconds, Ticket ticket, TodoItem todo, Listener listener) {
+        while (seconds > 0) {
+            int day = dayClock.dayOf(startMillis);
+            long leftInDay = (dayClock.endOfDay(startMillis) - startMillis + 999) / 1000;
+            long part = Math.min(seconds, Math.max(1, leftInDay));
+            listener.credit(ticket, todo, day, part);
+            seconds -= part;
+            startMillis += part * 1000;
+        }
+    }
+
+    private void reanchor(long now) {
+        long wall = System.currentTimeMillis();
+        long drift = wall - (anchorMillis + (now - anchorNanos) / NANOS_PER_MILLI);
+        if (Math.abs(drift) > MAX_WALL_CLOCK_DRIFT) {
+            log.info("Wall clock moved by {} ms compared to the monotonic clock.", drift);
+            anchorMillis = wall;
+            anchorNanos = now;
+        }
+    }
+}
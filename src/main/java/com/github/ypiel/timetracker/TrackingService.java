@@ -0,0 +1,769 @@
+package com.github.ypiel.timetracker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+// The tickets, the tracking and their persistence, without any UI: the Swing window and the HTTP API are
+// both clients of it. The tickets are only changed here, by one writer at a time: every mutation is
+// synchronized on the service. Readers which don't need the live objects (HTTP, reports, the snapshot files)
+// get an immutable snapshot() without taking the lock, the others read under it (read) or follow the
+// listener notifications. The tracked time is settled every second by the service's own clock thread, only
+// while something is tracked and a client shows it (watch()): otherwise the clock doesn't wake up, and the time
+// is settled from the timestamps when it is read, saved or shown again.
+@Slf4j
+class TrackingService {
+
+    interface Listener {
+        // Called with the service lock held, on the thread which made the change: record it and return
+
+        default void ticketAdded(Ticket ticket) {
+        }
+
+        default void ticketRemoved(Ticket ticket) {
+        }
+
+        // Fields or todos of the ticket changed
+        default void ticketChanged(Ticket ticket) {
+        }
+
+        // Any ticket may have been added, removed or changed
+        default void ticketsReloaded() {
+        }
+
+        default void credited(Ticket ticket, TodoItem todo, int epochDay, long seconds) {
+        }
+
+        default void trackingChanged(Ticket ticket, TodoItem todo, boolean running) {
+        }
+    }
+
+    // Entries read at once by importEntries, then applied by slices: the lock is released between two slices
+    private static final int IMPORT_BATCH = 10_000;
+    private static final int IMPORT_SLICE = 500;
+    // Above this size the journal is folded into a new snapshot
+    private static final long JOURNAL_MAX_SIZE = Long.getLong("time-tracker.journal.max-size", 1024 * 1024);
+
+    private List<Ticket> tickets = new ArrayList<>();
+    private final TicketIndex index = new TicketIndex();
+    private final DayClock dayClock = new DayClock();
+    private final Tracker tracker = new Tracker(dayClock, this::credit);
+    private final Journal journal = new Journal(DataFiles.JOURNAL);
+    private final ShardedStore store = new ShardedStore(DataFiles.STATE);
+    private final ColdArchive archive = new ColdArchive(DataFiles.ARCHIVE);
+    private final PersistenceWorker persistence = new PersistenceWorker(DataFiles.STATE, DataFiles.SNAPSHOT, store, archive,
+            journal, this::foreignRecords, this::remoteRecords);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "time-tracker-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private LocalDate lastCompaction = LocalDate.now();
+    // Lock of the only service of the directory, see Journal.lockInstance()
+    private Closeable instance;
+    // Change logs of the other devices merged in the tickets, see DeviceSync
+    private final Map<String, Long> synced = new HashMap<>();
+    // Status transitions and renames for the StatusLog, handed over with the journal records
+    private List<StatusLog.Change> statusChanges = new ArrayList<>();
+
+    private Ticket trackedTicket;
+    private TodoItem trackedTodo;
+    // Clients showing the time live, and the ticks done for them
+    private int watchers = 0;
+    private volatile ScheduledFuture<?> ticking;
+
+    // Copies of the tickets for the readers, null once something changed. Only the tickets the journal saw
+    // changing since the previous snapshot are copied again, the others are shared with it.
+    private volatile List<Ticket> snapshot;
+    private Map<Ticket, Ticket> copies = new IdentityHashMap<>();
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Load the tickets, archive the old done ones and start tracking.
+    // IllegalStateException when another service already runs on the directory.
+    synchronized void start() {
+        try {
+            instance = journal.lockInstance();
+            if (instance == null) {
+                throw new IllegalStateException("Another time-tracker already runs on " + DataFiles.STATE + ".");
+            }
+        } catch (IOException e) {
+            log.error("Can't lock time-tracker data.", e);
+        }
+        Metrics.LoadEvent event = new Metrics.LoadEvent();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            Closeable lock = journal.lock();
+            try {
+                tickets = DataFiles.load(journal, store);
+            } finally {
+                lock.close();
+            }
+        } catch (IOException e) {
+            log.error("Can't load time-tracker data.", e);
+        }
+        Metrics.LOAD.record(System.nanoTime() - start);
+        event.tickets = tickets.size();
+        event.commit();
+        Metrics.register(this);
+        index.reset(tickets);
+        synced.putAll(store.synced());
+        snapshot = null;
+        if (archiveTickets()) {
+            compact();
+        }
+        // Merge what the other devices did meanwhile right away
+        persistence.append(List.of());
+        tracker.start();
+        reschedule();
+        clock.scheduleWithFixedDelay(() -> run(this::save), 1, 1, TimeUnit.MINUTES);
+    }
+
+    // A client starts or stops showing the time as it goes, a window which is shown or iconified for instance.
+    // The time elapsed meanwhile is credited at once.
+    synchronized void watch(boolean watching) {
+        watchers = Math.max(0, watchers + (watching ? 1 : -1));
+        tracker.settle();
+        reschedule();
+    }
+
+    // Tick every second only when it shows
+    private void reschedule() {
+        boolean needed = watchers > 0 && trackedTicket != null && tracker.isRunning() && !clock.isShutdown();
+        if (needed && ticking == null) {
+            ticking = clock.scheduleAtFixedRate(() -> run(this::tick), 1, 1, TimeUnit.SECONDS);
+        } else if (!needed && ticking != null) {
+            ticking.cancel(false);
+            ticking = null;
+        }
+    }
+
+    // Readers get the time up to now even when the clock doesn't tick
+    private void catchUp() {
+        if (ticking == null) {
+            tracker.settle();
+        }
+    }
+
+    // Settle and save everything, then wait for the files to be written
+    void close() {
+        clock.shutdown();
+        synchronized (this) {
+            compact();
+        }
+        persistence.close();
+        if (instance != null) {
+            try {
+                instance.close();
+            } catch (IOException e) {
+                log.warn("Can't unlock time-tracker data.", e);
+            }
+        }
+    }
+
+    private static void run(Runnable task) {
+        // An exception would cancel the next runs
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("time-tracker clock task failed.", e);
+        }
+    }
+
+    // Run the supplier with the lock held, for the reads of several fields or of the todos and durations
+    synchronized <T> T read(Supplier<T> supplier) {
+        catchUp();
+        return supplier.get();
+    }
+
+    synchronized List<Ticket> tickets() {
+        return new ArrayList<>(tickets);
+    }
+
+    // Copies of the tickets as they are now, never modified: lock free until the next change
+    List<Ticket> snapshot() {
+        if (ticking == null) {
+            synchronized (this) {
+                catchUp();
+            }
+        }
+        List<Ticket> current = snapshot;
+        return current != null ? current : takeSnapshot();
+    }
+
+    // The copy of the ticket in snapshot(), null if there is no such ticket
+    Ticket snapshot(String id) {
+        for (Ticket ticket : snapshot()) {
+            if (ticket.getId().equals(id)) {
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    // null if there is no such ticket
+    synchronized Ticket ticket(String id) {
+        return index.get(id);
+    }
+
+    synchronized boolean contains(String id) {
+        return index.contains(id);
+    }
+
+    // False once the ticket has been deleted or archived
+    synchronized boolean contains(Ticket ticket) {
+        return index.rowOf(ticket) >= 0;
+    }
+
+    ColdArchive archive() {
+        return archive;
+    }
+
+    synchronized Ticket createTicket(int order, String id, String description, Status status) {
+        checkOrder(order);
+        String trimmed = id == null ? "" : id.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Ticket ID can't be empty.");
+        }
+        checkNewId(trimmed);
+        Ticket ticket = new Ticket(order, trimmed, description != null ? description.trim() : "", status != null ? status : Status.New);
+        tickets.add(ticket);
+        index.added(ticket);
+        journal.ticketCreated(ticket);
+        transition(ticket, null, null, ticket.getStatus());
+        fire(l -> l.ticketAdded(ticket));
+        return ticket;
+    }
+
+    // Each setter returns false when the value doesn't change anything
+
+    synchronized boolean setOrder(Ticket ticket, int order) {
+        checkActive(ticket);
+        checkOrder(order);
+        if (order == ticket.getOrder()) {
+            return false;
+        }
+        ticket.setOrder(order);
+        ticketUpdated(ticket.getId(), ticket);
+        return true;
+    }
+
+    synchronized boolean rename(Ticket ticket, String id) {
+        checkActive(ticket);
+        String previousId = ticket.getId();
+        String trimmed = id == null ? "" : id.trim();
+        if (trimmed.isEmpty() || trimmed.equals(previousId)) {
+            return false;
+        }
+        checkNewId(trimmed);
+        ticket.setId(trimmed);
+        index.renamed(previousId, ticket);
+        statusChanges.add(new StatusLog.Renamed(trimmed, null, previousId));
+        ticketUpdated(previousId, ticket);
+        return true;
+    }
+
+    synchronized boolean setDescription(Ticket ticket, String description) {
+        checkActive(ticket);
+        if (description == null || description.equals(ticket.getDescription())) {
+            return false;
+        }
+        ticket.setDescription(description);
+        ticketUpdated(ticket.getId(), ticket);
+        return true;
+    }
+
+    synchronized boolean setStatus(Ticket ticket, Status status) {
+        checkActive(ticket);
+        if (status == null || status == ticket.getStatus()) {
+            return false;
+        }
+        transition(ticket, null, ticket.getStatus(), status);
+        ticket.setStatus(status);
+        ticketUpdated(ticket.getId(), ticket);
+        return true;
+    }
+
+    synchronized void deleteTicket(Ticket ticket) {
+        int row = index.rowOf(ticket);
+        if (row < 0) {
+            return;
+        }
+        tracker.settle();
+        tickets.remove(row);
+        index.removed(ticket, row);
+        journal.ticketDeleted(ticket.getId());
+        if (ticket == trackedTicket) {
+            track(null, null);
+        }
+        fire(l -> l.ticketRemoved(ticket));
+    }
+
+    synchronized TodoItem addTodo(Ticket ticket, String description, Status status) {
+        checkActive(ticket);
+        if (description == null || description.isBlank()) {
+            throw new IllegalArgumentException("Todo description can't be empty.");
+        }
+        TodoItem todo = new TodoItem(description.trim(), status != null ? status : Status.New);
+        ticket.getTodoItems().add(todo);
+        journal.todoCreated(ticket, todo);
+        transition(ticket, todo, null, todo.getStatus());
+        fire(l -> l.ticketChanged(ticket));
+        return todo;
+    }
+
+    synchronized boolean setTodoStatus(Ticket ticket, TodoItem todo, Status status) {
+        int i = todoIndex(ticket, todo);
+        if (status == null || status == todo.getStatus()) {
+            return false;
+        }
+        transition(ticket, todo, todo.getStatus(), status);
+        todo.setStatus(status);
+        journal.todoUpdated(ticket, i, todo, todo.getDescription());
+        fire(l -> l.ticketChanged(ticket));
+        return true;
+    }
+
+    synchronized boolean setTodoDescription(Ticket ticket, TodoItem todo, String description) {
+        int i = todoIndex(ticket, todo);
+        if (description == null || description.isBlank() || description.trim().equals(todo.getDescription())) {
+            return false;
+        }
+        String previous = todo.getDescription();
+        todo.setDescription(description.trim());
+        statusChanges.add(new StatusLog.Renamed(ticket.getId(), todo.getDescription(), previous));
+        journal.todoUpdated(ticket, i, todo, previous);
+        fire(l -> l.ticketChanged(ticket));
+        return true;
+    }
+
+    synchronized void deleteTodo(Ticket ticket, TodoItem todo) {
+        int i = todoIndex(ticket, todo);
+        tracker.settle();
+        journal.todoDeleted(ticket, i);
+        ticket.getTodoItems().remove(i);
+        if (todo == trackedTodo) {
+            track(ticket, null);
+        }
+        fire(l -> l.ticketChanged(ticket));
+    }
+
+    // The time elapsed so far goes to the previous ticket/todo, the next one to these, null for none
+    synchronized void track(Ticket ticket, TodoItem todo) {
+        if (ticket == trackedTicket && todo == trackedTodo) {
+            return;
+        }
+        if (ticket != null) {
+            checkActive(ticket);
+        }
+        if (todo != null) {
+            todoIndex(ticket, todo);
+        }
+        tracker.track(ticket, todo);
+        trackedTicket = ticket;
+        trackedTodo = todo;
+        reschedule();
+        trackingChanged();
+    }
+
+    synchronized Ticket trackedTicket() {
+        return trackedTicket;
+    }
+
+    synchronized TodoItem trackedTodo() {
+        return trackedTodo;
+    }
+
+    synchronized boolean isRunning() {
+        return tracker.isRunning();
+    }
+
+    // Pause or resume, the tracked ticket/todo stays the same
+    synchronized void setRunning(boolean running) {
+        if (running == tracker.isRunning()) {
+            return;
+        }
+        if (running) {
+            tracker.start();
+        } else {
+            tracker.stop();
+        }
+        reschedule();
+        trackingChanged();
+    }
+
+    // Pause as if it had been done at this System.nanoTime, the time credited since then is taken back
+    synchronized void pauseAt(long nanoTime) {
+        if (!tracker.isRunning()) {
+            return;
+        }
+        tracker.stopAt(nanoTime);
+        reschedule();
+        trackingChanged();
+    }
+
+    // Credit the time tracked up to now
+    synchronized void settle() {
+        tracker.settle();
+    }
+
+    // Every second, the time waiting for the lock included
+    private void tick() {
+        Metrics.TickEvent event = new Metrics.TickEvent();
+        event.begin();
+        long start = System.nanoTime();
+        settle();
+        Metrics.TICK.record(System.nanoTime() - start);
+        event.running = tracker.isRunning();
+        event.commit();
+    }
+
+    // Imported so far, see importEntries
+    record ImportResult(long entries, long skipped, int tickets, int todos, long seconds, long bytes) {
+    }
+
+    // Entries read by the calling thread and applied under the lock by slices, the clock, the UI and the API keep
+    // going in between: a writer waits for one slice at most, the clients are notified once per batch. The tickets are found by ID through the index, then in the archive, and the todos by description,
+    // the missing ones are created. An archived ticket is put back in the tickets list as it is, with the imported
+    // time: the next archiving moves it back if it is still old and done. The time isn't in the journal records:
+    // the import ends with a compaction, like a reopen.
+    ImportResult importEntries(TimeEntries.Reader reader, Consumer<ImportResult> progress) throws IOException {
+        long[] counts = new long[4];
+        List<TimeEntries.Entry> batch = new ArrayList<>(IMPORT_BATCH);
+        TimeEntries.Entry entry;
+        while ((entry = reader.next()) != null) {
+            batch.add(entry);
+            if (batch.size() == IMPORT_BATCH) {
+                importBatch(batch, counts);
+                batch.clear();
+                progress.accept(new ImportResult(counts[0], reader.skipped(), (int) counts[1], (int) counts[2], counts[3],
+                        reader.position()));
+            }
+        }
+        importBatch(batch, counts);
+        synchronized (this) {
+            compact();
+        }
+        ImportResult result = new ImportResult(counts[0], reader.skipped(), (int) counts[1], (int) counts[2], counts[3],
+                reader.position());
+        progress.accept(result);
+        return result;
+    }
+
+    // counts: entries, tickets and todos created, seconds
+    private void importBatch(List<TimeEntries.Entry> batch, long[] counts) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < batch.size(); from += IMPORT_SLICE) {
+            importSlice(batch.subList(from, Math.min(batch.size(), from + IMPORT_SLICE)), counts);
+        }
+        synchronized (this) {
+            fire(Listener::ticketsReloaded);
+        }
+    }
+
+    private synchronized void importSlice(List<TimeEntries.Entry> slice, long[] counts) throws IOException {
+        int order = 0;
+        for (Ticket ticket : tickets) {
+            order = Math.max(order, ticket.getOrder());
+        }
+        // Todos of the tickets of the slice by description, the tickets may have changed since the previous slice
+        Map<Ticket, Map<String, TodoItem>> todos = new IdentityHashMap<>();
+        for (TimeEntries.Entry e : slice) {
+            Ticket ticket = index.get(e.ticket());
+            if (ticket == null && (ticket = archive.get(e.ticket())) != null) {
+                tickets.add(ticket);
+                index.added(ticket);
+            } else if (ticket == null) {
+                ticket = new Ticket(++order, e.ticket(), e.description() != null ? e.description() : "",
+                        e.status() != null ? e.status() : Status.New);
+                tickets.add(ticket);
+                index.added(ticket);
+                journal.ticketCreated(ticket);
+                transition(ticket, null, null, ticket.getStatus());
+                counts[1]++;
+            }
+            TodoItem todo = null;
+            if (e.todo() != null) {
+                Ticket t = ticket;
+                Map<String, TodoItem> byDescription = todos.computeIfAbsent(ticket, k -> {
+                    Map<String, TodoItem> map = new HashMap<>();
+                    for (TodoItem item : t.getTodoItems()) {
+                        map.putIfAbsent(item.getDescription(), item);
+                    }
+                    return map;
+                });
+                todo = byDescription.get(e.todo());
+                if (todo == null) {
+                    todo = new TodoItem(e.todo(), e.status() != null ? e.status() : Status.New);
+                    ticket.getTodoItems().add(todo);
+                    byDescription.put(e.todo(), todo);
+                    journal.todoCreated(ticket, todo);
+                    transition(ticket, todo, null, todo.getStatus());
+                    counts[2]++;
+                }
+            }
+            int day = (int) e.day().toEpochDay();
+            ticket.incrementDuration(e.seconds());
+            ticket.incrementDurationForDay(day, e.seconds());
+            if (todo != null) {
+                todo.incrementDuration(e.seconds());
+                todo.incrementDurationForDay(day, e.seconds());
+            }
+            journal.imported(ticket);
+            counts[0]++;
+            counts[3] += e.seconds();
+        }
+    }
+
+    // Put an archived ticket back in the tickets list, its archived copy is dropped at the next archiving
+    synchronized Ticket reopen(String id) throws IOException {
+        checkNotActive(id);
+        Ticket ticket = archive.get(id);
+        if (ticket == null) {
+            return null;
+        }
+        transition(ticket, null, ticket.getStatus(), Status.In_Progress);
+        ticket.setStatus(Status.In_Progress);
+        tickets.add(ticket);
+        index.added(ticket);
+        fire(l -> l.ticketAdded(ticket));
+        // Durations and todos aren't in the journal records, the whole list is saved
+        compact();
+        return ticket;
+    }
+
+    // Replace the tickets with the ones of the backup of that day, the snapshot bytes being checked against
+    // their CRC. The tickets archived since the backup stay in the archive only. Returns the tickets restored.
+    synchronized int restore(LocalDate date) throws IOException {
+        byte[] content = persistence.backups().restore(date);
+        List<Ticket> restored = new ArrayList<>();
+        for (Ticket ticket : StorageCodec.detect(content).read(content)) {
+            if (!archive.contains(ticket.getId())) {
+                restored.add(ticket);
+            }
+        }
+        track(null, null);
+        tickets = restored;
+        index.reset(tickets);
+        log.info("{} tickets restored from the backup of {}.", tickets.size(), date);
+        fire(Listener::ticketsReloaded);
+        // The journal records don't hold the durations, the whole list is saved
+        compact();
+        return tickets.size();
+    }
+
+    // Append what changed since the last save to the journal, the snapshot is only rewritten when the
+    // journal gets too big or once a day. The files are written by the persistence thread.
+    synchronized void save() {
+        tracker.settle();
+        persistence.append(journal.drain());
+        drainStatusChanges();
+        boolean newDay = !LocalDate.now().equals(lastCompaction);
+        if (newDay && archiveTickets()) {
+            fire(Listener::ticketsReloaded);
+        }
+        if (journal.size() > JOURNAL_MAX_SIZE || newDay) {
+            compact();
+        }
+    }
+
+    // Write the whole tickets list to time-tracker.json and start a new empty journal on top of it.
+    // The records still pending are only published, the snapshot already has them.
+    private void compact() {
+        tracker.settle();
+        persistence.append(journal.drain());
+        drainStatusChanges();
+        persistence.compact(takeSnapshot(), Map.copyOf(synced));
+        lastCompaction = LocalDate.now();
+    }
+
+    private void transition(Ticket ticket, TodoItem todo, Status from, Status to) {
+        statusChanges.add(new StatusLog.Transition(System.currentTimeMillis(), ticket.getId(),
+                todo == null ? null : todo.getDescription(), from, to));
+    }
+
+    private void drainStatusChanges() {
+        if (!statusChanges.isEmpty()) {
+            persistence.statusChanged(statusChanges);
+            statusChanges = new ArrayList<>();
+        }
+    }
+
+    private synchronized List<Ticket> takeSnapshot() {
+        if (snapshot == null) {
+            Set<Ticket> changed = journal.takeChanged();
+            Map<Ticket, Ticket> next = new IdentityHashMap<>(tickets.size());
+            List<Ticket> copy = new ArrayList<>(tickets.size());
+            for (Ticket ticket : tickets) {
+                Ticket previous = changed.contains(ticket) ? null : copies.get(ticket);
+                Ticket t = previous != null ? previous : ticket.copy();
+                next.put(ticket, t);
+                copy.add(t);
+            }
+            copies = next;
+            snapshot = Collections.unmodifiableList(copy);
+        }
+        return snapshot;
+    }
+
+    // Move the old Done tickets to the archive, true if some were moved. The caller saves the tickets list,
+    // the archive is written before it by the persistence thread.
+    private boolean archiveTickets() {
+        try {
+            // Reopened tickets are in the loaded snapshot, their archived copy can go
+            archive.forget(tickets);
+            List<Ticket> old = ColdArchive.candidates(tickets, LocalDate.now(), trackedTicket);
+            if (old.isEmpty()) {
+                return false;
+            }
+            List<Ticket> copies = new ArrayList<>(old.size());
+            for (Ticket ticket : old) {
+                copies.add(ticket.copy());
+            }
+            archive.archive(copies);
+            Set<Ticket> archived = Collections.newSetFromMap(new IdentityHashMap<>());
+            archived.addAll(old);
+            tickets.removeIf(archived::contains);
+            index.reset(tickets);
+            return true;
+        } catch (IOException e) {
+            log.error("Can't archive the done tickets.", e);
+            return false;
+        }
+    }
+
+    // Records appended by the command line, applied as if the changes had been done here.
+    // Called by the persistence thread.
+    private synchronized void foreignRecords(long seq, List<Journal.Record> records) {
+        tracker.settle();
+        journal.applyForeign(tickets, index, records);
+        if (trackedTicket != null && index.rowOf(trackedTicket) < 0) {
+            track(null, null);
+        } else if (trackedTodo != null && TicketIndex.identityIndexOf(trackedTicket.getTodoItems(), trackedTodo) < 0) {
+            track(trackedTicket, null);
+        }
+        fire(Listener::ticketsReloaded);
+        persistence.foreignApplied(seq);
+    }
+
+    // Changes published by the other devices, merged then committed at once with the offsets of their logs:
+    // only the months they touched are written. Called by the persistence thread.
+    private synchronized void remoteRecords(List<DeviceSync.Batch> batches) {
+        tracker.settle();
+        for (DeviceSync.Batch batch : batches) {
+            journal.applyRemote(tickets, index, batch.records());
+            synced.put(batch.log(), batch.offset());
+        }
+        if (trackedTicket != null && index.rowOf(trackedTicket) < 0) {
+            track(null, null);
+        } else if (trackedTodo != null && TicketIndex.identityIndexOf(trackedTicket.getTodoItems(), trackedTodo) < 0) {
+            track(trackedTicket, null);
+        }
+        fire(Listener::ticketsReloaded);
+        compact();
+    }
+
+    // Seconds tracked on a ticket and its todo, called by the tracker with the lock held
+    private void credit(Ticket ticket, TodoItem todo, int day, long seconds) {
+        if (index.rowOf(ticket) < 0) {
+            // Deleted meanwhile
+            return;
+        }
+        ticket.incrementDuration(seconds);
+        ticket.incrementDurationForDay(day, seconds);
+        journal.duration(ticket, null, day, seconds);
+        if (todo != null) {
+            todo.incrementDuration(seconds);
+            todo.incrementDurationForDay(day, seconds);
+            journal.duration(ticket, todo, day, seconds);
+        }
+        snapshot = null;
+        for (Listener l : listeners) {
+            l.credited(ticket, todo, day, seconds);
+        }
+    }
+
+    // Every change goes through here or credit(), the snapshot is taken again on the next read
+    private void fire(Consumer<Listener> event) {
+        snapshot = null;
+        listeners.forEach(event);
+    }
+
+    private void ticketUpdated(String previousId, Ticket ticket) {
+        journal.ticketUpdated(previousId, ticket);
+        fire(l -> l.ticketChanged(ticket));
+    }
+
+    private void trackingChanged() {
+        boolean running = tracker.isRunning();
+        fire(l -> l.trackingChanged(trackedTicket, trackedTodo, running));
+    }
+
+    private void checkActive(Ticket ticket) {
+        if (index.rowOf(ticket) < 0) {
+            throw new IllegalArgumentException("Ticket " + ticket.getId() + " doesn't exist anymore.");
+        }
+    }
+
+    // An archived ticket is reopened instead: archiveTickets() would drop its history with the new one
+    private void checkNewId(String id) {
+        checkNotActive(id);
+        boolean archived;
+        try {
+            archived = archive.contains(id);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Can't read the archive index.", e);
+        }
+        if (archived) {
+            throw new IllegalArgumentException("Ticket with ID " + id + " is archived, reopen it instead.");
+        }
+    }
+
+    private void checkNotActive(String id) {
+        if (index.contains(id)) {
+            throw new IllegalArgumentException("Ticket with ID " + id + " already exists.");
+        }
+    }
+
+    private static void checkOrder(int order) {
+        if (order <= 0) {
+            throw new IllegalArgumentException("Ticket order must be higher than 0.");
+        }
+    }
+
+    private int todoIndex(Ticket ticket, TodoItem todo) {
+        checkActive(ticket);
+        int i = TicketIndex.identityIndexOf(ticket.getTodoItems(), todo);
+        if (i < 0) {
+            throw new IllegalArgumentException("The todo isn't in ticket " + ticket.getId() + " anymore.");
+        }
+        return i;
+    }
+}
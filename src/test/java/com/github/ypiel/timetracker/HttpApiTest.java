@@ -0,0 +1,198 @@
+package com.github.ypiel.timetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// The API on a free port (time-tracker.http.port=0 in the pom) over a service in the test directory.
+// The pom also lets the HTTP client send another Host header, for the DNS rebinding check.
+class HttpApiTest {
+
+    private static final int CLIENTS = 32;
+
+    private static TrackingService service;
+    private static HttpApi api;
+    private static HttpClient client;
+
+    @BeforeAll
+    static void start() throws Exception {
+        assertNotNull(System.getProperty("time-tracker.dir"), "time-tracker.dir must point to a test directory");
+        if (Files.exists(DataFiles.DIR)) {
+            ShardedStore.deleteTree(DataFiles.DIR);
+        }
+        service = new TrackingService();
+        service.start();
+        api = new HttpApi(service);
+        api.start();
+        client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    }
+
+    @AfterAll
+    static void stop() {
+        api.stop();
+        service.close();
+    }
+
+    @Test
+    void ticketsAndTodos() throws Exception {
+        HttpResponse<String> created = send("POST", "/api/tickets", "{\"id\": \"CRUD 1\", \"description\": \"d\", \"status\": \"New\"}");
+        assertEquals(201, created.statusCode(), created.body());
+        assertEquals("CRUD 1", json(created).get("id").asText());
+
+        JsonNode list = json(send("GET", "/api/tickets", null));
+        assertTrue(ids(list).contains("CRUD 1"));
+
+        HttpResponse<String> patched = send("PATCH", "/api/tickets/CRUD%201", "{\"description\": \"e\", \"status\": \"In_Progress\"}");
+        assertEquals(200, patched.statusCode(), patched.body());
+        assertEquals("e", json(patched).get("description").asText());
+        assertEquals("In_Progress", json(patched).get("status").asText());
+
+        HttpResponse<String> todo = send("POST", "/api/tickets/CRUD%201/todos", "{\"description\": \"t\", \"status\": \"New\"}");
+        assertEquals(201, todo.statusCode(), todo.body());
+        assertEquals(0, json(todo).get("index").asInt());
+        HttpResponse<String> todoPatched = send("PATCH", "/api/tickets/CRUD%201/todos/0", "{\"status\": \"Done\"}");
+        assertEquals("Done", json(todoPatched).get("status").asText());
+
+        JsonNode ticket = json(send("GET", "/api/tickets/CRUD%201", null));
+        assertEquals("e", ticket.get("description").asText());
+        assertEquals("t", ticket.get("todoItems").get(0).get("description").asText());
+
+        assertEquals(200, send("DELETE", "/api/tickets/CRUD%201/todos/0", null).statusCode());
+        assertEquals(0, json(send("GET", "/api/tickets/CRUD%201", null)).get("todoItems").size());
+        assertEquals(200, send("DELETE", "/api/tickets/CRUD%201", null).statusCode());
+        assertEquals(404, send("GET", "/api/tickets/CRUD%201", null).statusCode());
+        assertEquals(400, send("POST", "/api/tickets", "{\"description\": \"no id\"}").statusCode());
+    }
+
+    @Test
+    void changesNeedTheHeader() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri("/api/tickets"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"id\": \"NO HEADER\", \"status\": \"New\"}"))
+                .build();
+        assertEquals(403, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertNull(service.snapshot("NO HEADER"));
+        // Reads don't need it
+        HttpRequest read = HttpRequest.newBuilder(uri("/api/tickets")).GET().build();
+        assertEquals(200, client.send(read, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    void otherHostsAreRejected() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri("/api/tickets"))
+                .header("Host", "attacker.example:" + api.port())
+                .GET()
+                .build();
+        assertEquals(403, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    void trackingAndTicks() throws Exception {
+        assertEquals(201, send("POST", "/api/tickets", "{\"id\": \"TRACKED\", \"status\": \"New\"}").statusCode());
+        HttpRequest events = HttpRequest.newBuilder(uri("/api/events")).GET().build();
+        HttpResponse<Stream<String>> stream = client.send(events, HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, stream.statusCode());
+        try (Stream<String> lines = stream.body()) {
+            HttpResponse<String> put = send("PUT", "/api/tracking", "{\"ticket\": \"TRACKED\", \"running\": true}");
+            assertEquals(200, put.statusCode(), put.body());
+            assertEquals("TRACKED", json(put).get("ticket").asText());
+            assertTrue(json(put).get("running").asBoolean());
+
+            JsonNode tracking = json(send("GET", "/api/tracking", null));
+            assertEquals("TRACKED", tracking.get("ticket").asText());
+
+            CompletableFuture<String> tick = CompletableFuture.supplyAsync(() -> {
+                boolean next = false;
+                for (String line : (Iterable<String>) lines::iterator) {
+                    if (next && line.startsWith("data: ")) {
+                        return line.substring("data: ".length());
+                    }
+                    next = line.equals("event: tick");
+                }
+                return null;
+            });
+            JsonNode data = TicketJson.MAPPER.readTree(tick.get(10, TimeUnit.SECONDS));
+            assertEquals("TRACKED", data.get("ticket").asText());
+            assertTrue(data.get("seconds").asLong() > 0);
+        } finally {
+            send("PUT", "/api/tracking", "{\"ticket\": null, \"running\": false}");
+        }
+        JsonNode tracking = json(send("GET", "/api/tracking", null));
+        assertTrue(tracking.get("ticket").isNull());
+    }
+
+    @Test
+    void parallelCreations() throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            responses.add(sendAsync("POST", "/api/tickets", "{\"id\": \"PARALLEL-" + i + "\", \"status\": \"New\"}"));
+        }
+        Set<String> ids = new HashSet<>();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> created = response.get(30, TimeUnit.SECONDS);
+            assertEquals(201, created.statusCode(), created.body());
+            ids.add(json(created).get("id").asText());
+        }
+        assertEquals(CLIENTS, ids.size());
+        assertTrue(ids(json(send("GET", "/api/tickets", null))).containsAll(ids));
+
+        // The same ID at once: only one of them is created
+        responses.clear();
+        for (int i = 0; i < CLIENTS; i++) {
+            responses.add(sendAsync("POST", "/api/tickets", "{\"id\": \"SAME\", \"status\": \"New\"}"));
+        }
+        int created = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            int status = response.get(30, TimeUnit.SECONDS).statusCode();
+            assertTrue(status == 201 || status == 400, "status " + status);
+            created += status == 201 ? 1 : 0;
+        }
+        assertEquals(1, created);
+    }
+
+    private static HttpResponse<String> send(String method, String path, String body) throws Exception {
+        return sendAsync(method, path, body).get(30, TimeUnit.SECONDS);
+    }
+
+    private static CompletableFuture<HttpResponse<String>> sendAsync(String method, String path, String body) {
+        HttpRequest request = HttpRequest.newBuilder(uri(path))
+                .header(HttpApi.HEADER, "test")
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static URI uri(String path) {
+        return URI.create("http://localhost:" + api.port() + path);
+    }
+
+    private static JsonNode json(HttpResponse<String> response) throws Exception {
+        return TicketJson.MAPPER.readTree(response.body());
+    }
+
+    private static Set<String> ids(JsonNode tickets) {
+        Set<String> ids = new HashSet<>();
+        tickets.forEach(ticket -> ids.add(ticket.get("id").asText()));
+        return ids;
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.ypiel.timetracker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// Writers change the tickets and credit the tracked one while readers go through the snapshots and the reports.
+// The data files go to time-tracker.dir, set by the pom: DataFiles reads it once.
+class TrackingServiceStressTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 8;
+    private static final int CHANGES = 500;
+
+    @BeforeEach
+    void clean() throws Exception {
+        assertNotNull(System.getProperty("time-tracker.dir"), "time-tracker.dir must point to a test directory");
+        if (Files.exists(DataFiles.DIR)) {
+            ShardedStore.deleteTree(DataFiles.DIR);
+        }
+    }
+
+    @Test
+    void countersAreAtomic() throws Exception {
+        Ticket ticket = new Ticket(1, "counter", "", Status.New);
+        TodoItem todo = new TodoItem("counter", Status.New);
+        try (ExecutorService executor = Executors.newFixedThreadPool(WRITERS)) {
+            for (int i = 0; i < WRITERS; i++) {
+                executor.submit(() -> {
+                    for (int j = 0; j < 100_000; j++) {
+                        ticket.incrementDuration(1);
+                        todo.incrementDuration(1);
+                    }
+                });
+            }
+        }
+        assertEquals(WRITERS * 100_000L, ticket.getDuration());
+        assertEquals(WRITERS * 100_000L, todo.getDuration());
+    }
+
+    @Test
+    void snapshotsStayConsistentWhileWritten() throws Exception {
+        TrackingService service = new TrackingService();
+        service.start();
+        Map<String, Long> saved;
+        try {
+            ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+            AtomicBoolean stop = new AtomicBoolean();
+            List<Future<?>> writers = new ArrayList<>();
+            List<Future<?>> readers = new ArrayList<>();
+            try (ExecutorService executor = Executors.newFixedThreadPool(READERS + WRITERS)) {
+                for (int r = 0; r < READERS; r++) {
+                    readers.add(executor.submit(() -> read(service, stop, errors)));
+                }
+                service.setRunning(true);
+                for (int w = 0; w < WRITERS; w++) {
+                    int writer = w;
+                    writers.add(executor.submit(() -> write(service, writer)));
+                }
+                for (Future<?> writer : writers) {
+                    writer.get(2, TimeUnit.MINUTES);
+                }
+                // Some whole seconds credited while the readers still run
+                Ticket tracked = service.createTicket(1, "tracked", "", Status.New);
+                service.track(tracked, service.addTodo(tracked, "todo", Status.New));
+                Thread.sleep(2500);
+                service.track(null, null);
+                stop.set(true);
+                for (Future<?> reader : readers) {
+                    reader.get(1, TimeUnit.MINUTES);
+                }
+            }
+            assertTrue(errors.isEmpty(), () -> String.join("\n", errors));
+            Ticket tracked = service.snapshot("tracked");
+            assertTrue(tracked.getDuration() >= 2, "tracked " + tracked.getDuration() + " s");
+            saved = durations(service.snapshot());
+        } finally {
+            service.close();
+        }
+
+        TrackingService reloaded = new TrackingService();
+        reloaded.start();
+        try {
+            assertEquals(saved, durations(reloaded.snapshot()));
+        } finally {
+            reloaded.close();
+        }
+    }
+
+    private static void write(TrackingService service, int writer) {
+        Random random = new Random(writer);
+        Status[] statuses = Status.values();
+        for (int i = 0; i < CHANGES; i++) {
+            Ticket ticket = service.createTicket(1 + random.nextInt(9), "W" + writer + "-" + i, "", Status.New);
+            TodoItem todo = service.addTodo(ticket, "todo", Status.New);
+            service.track(ticket, todo);
+            service.setStatus(ticket, statuses[random.nextInt(statuses.length)]);
+            service.settle();
+            if (random.nextInt(4) == 0) {
+                service.deleteTicket(ticket);
+            }
+            if (random.nextInt(50) == 0) {
+                service.save();
+            }
+        }
+    }
+
+    // A snapshot is checked, then checked again once the next ones were taken: it must not have changed
+    private static void read(TrackingService service, AtomicBoolean stop, ConcurrentLinkedQueue<String> errors) {
+        List<Ticket> previous = null;
+        Map<String, Long> previousDurations = null;
+        while (!stop.get()) {
+            List<Ticket> snapshot = service.snapshot();
+            for (Ticket ticket : snapshot) {
+                long days = ticket.getDurationsPerDay().total();
+                long todos = ticket.getTodoItems().stream().mapToLong(TodoItem::getDuration).sum();
+                if (ticket.getDuration() != days || ticket.getDuration() < todos) {
+                    errors.add(ticket.getId() + ": " + ticket.getDuration() + " s, " + days + " s per day, " + todos + " s in todos");
+                }
+            }
+            new ReportEngine(snapshot).report(ReportEngine.GroupBy.DAY, LocalDate.now().minusDays(1), LocalDate.now());
+            if (previous != null && !previousDurations.equals(durations(previous))) {
+                errors.add("A published snapshot changed.");
+            }
+            previous = snapshot;
+            previousDurations = durations(snapshot);
+        }
+    }
+
+    private static Map<String, Long> durations(List<Ticket> tickets) {
+        return tickets.stream().collect(Collectors.toMap(Ticket::getId, Ticket::getDuration));
+    }
+}